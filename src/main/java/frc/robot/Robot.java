@@ -6,8 +6,9 @@ package frc.robot;
 
 import com.pathplanner.lib.pathfinding.Pathfinding;
 
-import edu.wpi.first.cameraserver.CameraServer;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
@@ -16,6 +17,12 @@ import frc.robot.commands.ShooterController;
 import frc.robot.subsystems.IntakeSubsystem;
 import frc.robot.subsystems.ShooterSubsystem;
 import frc.robot.subsystems.SwerveSubsystem;
+import frc.robot.utilities.BlackBoxRecorder;
+import frc.robot.utilities.CANHealthMonitor;
+import frc.robot.utilities.DriverCamera;
+import frc.robot.utilities.PowerSampler;
+import frc.robot.utilities.RobotLogger;
+import frc.robot.utilities.Telemetry;
 
 /* This section pulls from autonomous code and the
 * robotContainer to tell robot to follow basic commands
@@ -38,23 +45,42 @@ public class Robot extends TimedRobot {
 
   @Override
   public void robotInit() {
+    // Logs NetworkTables and the driver station to the roboRIO, SysId routines record their data here too
+    DataLogManager.start();
+    DriverStation.startDataLog(DataLogManager.getLog());
+    RobotLogger.getInstance(); // Hooks command events and rotates old logs before anything registers with it
+    BlackBoxRecorder.getInstance(); // Saves the previous run's black box and starts recording this one's
+    PowerSampler.getInstance(); // Starts reading the power distribution's channel currents
+
+    Telemetry.initialize();
     m_robotContainer = new RobotContainer();
+
+    // Loads the navgrid and starts PathPlanner's pathfinding thread now instead of on the first pathfinding command
+    Pathfinding.ensureInitialized();
     //intakeSubsystem = new IntakeSubsystem();
     //shooterSubsystem = new ShooterSubsystem();
     //swerveSubsystem = new SwerveSubsystem();
 
     //shooterController = new ShooterController(shooterSubsystem, intakeSubsystem);
-    CameraServer.startAutomaticCapture();
+    // Streams with a per-mode profile and only while a dashboard is watching, see DriverCamera
+    DriverCamera.getInstance();
   }
 
   @Override
   public void robotPeriodic() {
+    Telemetry.update(); // Before the scheduler so every subsystem publishes at the same level this loop
+    long schedulerStart = RobotLogger.now();
     CommandScheduler.getInstance().run();
+    RobotLogger.getInstance().logTiming("Scheduler", schedulerStart);
+    RobotLogger.getInstance().log(); // After the scheduler so the log has this loop's inputs and outputs
+    BlackBoxRecorder.getInstance().record();
     //m_robotContainer.disabled();
   }
 
   @Override
-  public void disabledInit() {}
+  public void disabledInit() {
+    PowerSampler.getInstance().reportMatch();
+  }
 
   @Override
   public void disabledPeriodic() {
@@ -66,6 +92,8 @@ public class Robot extends TimedRobot {
 
   @Override
   public void autonomousInit() {
+    PowerSampler.getInstance().resetMatch();
+    CANHealthMonitor.getInstance().resetStatistics();
     m_autonomousCommand = m_robotContainer.getAutonomousCommand();
 
     if (m_autonomousCommand != null) {
@@ -111,6 +139,11 @@ public class Robot extends TimedRobot {
   @Override
   public void testInit() {
     CommandScheduler.getInstance().cancelAll();
+
+    Command sysIdCommand = m_robotContainer.getSysIdCommand();
+    if (sysIdCommand != null) {
+      sysIdCommand.schedule();
+    }
   }
 
   @Override
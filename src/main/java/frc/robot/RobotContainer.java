@@ -9,6 +9,7 @@
 package frc.robot;
 
 import java.sql.Driver;
+import java.util.function.Supplier;
 
 import com.pathplanner.lib.auto.AutoBuilder;
 import com.pathplanner.lib.auto.NamedCommands;
@@ -17,6 +18,7 @@ import com.pathplanner.lib.path.PathPlannerPath;
 import com.pathplanner.lib.path.PathPlannerTrajectory;
 
 import edu.wpi.first.cameraserver.CameraServer;
+import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.networktables.DoubleSubscriber;
 import edu.wpi.first.wpilibj.GenericHID;
 import edu.wpi.first.wpilibj.Joystick;
@@ -27,13 +29,14 @@ import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.button.JoystickButton;
 
-// import frc.robot.subsystems.TankSubsystem;
-// import frc.robot.commands.TankController;
+import frc.robot.subsystems.TankSubsystem;
+import frc.robot.commands.TankController;
 import frc.robot.subsystems.SwerveSubsystem;
 import frc.robot.subsystems.IntakeSubsystem;
 import frc.robot.subsystems.ShooterSubsystem;
 import frc.robot.subsystems.ClimberSubsystem;
 
+import frc.robot.commands.AimAtSpeaker;
 import frc.robot.commands.ShooterController;
 import frc.robot.commands.SwerveController;
 import frc.robot.commands.AmpController;
@@ -42,10 +45,13 @@ import frc.robot.commands.IntakeNote;
 import frc.robot.commands.IntakePull;
 import frc.robot.commands.IntakePush;
 import frc.robot.commands.StopIntake;
-import frc.robot.commands.ScorePositionQuad;
 
+import frc.robot.utilities.BlackBoxRecorder;
 import frc.robot.utilities.Controller;
+import frc.robot.utilities.FlowField;
+import frc.robot.utilities.PoseEstimator;
 import frc.robot.utilities.constants.Constants;
+import frc.robot.utilities.constants.FieldConstants;
 
 
 /*Below class holds all info related to controlling robot.
@@ -72,6 +78,7 @@ public class RobotContainer {
   private final Joystick OperatorController;
 
   private final SendableChooser<Command> autonomousChooser;
+  private final SendableChooser<Command> sysIdChooser;
 
   private final JoystickButton resetHeading;
   private final JoystickButton robotCentric;
@@ -87,8 +94,12 @@ public class RobotContainer {
   private final JoystickButton rightClimberDown;
   private final JoystickButton leftClimberDown;
   private final JoystickButton cycleButton;
+  private final JoystickButton aimAtSpeaker;
 
-  public final SwerveSubsystem swerveSubsystem;
+  public final SwerveSubsystem swerveSubsystem; // Null on the tank practice base
+  private final SwerveController swerveController;
+  public final TankSubsystem tankSubsystem; // Null on the swerve robot
+  private final TankController tankController;
   private final int translationAxis;
   private final int strafeAxis;
   private final int rotationAxis;
@@ -101,11 +112,22 @@ public class RobotContainer {
   private final IntakePull pullNote;
   private final IntakePush pushNote;
   private final StopIntake stopIntake;
-  private final ScorePositionQuad goScorePosition;
   private final CycleShooter cyclingShooter;
 
   public RobotContainer() {
-    swerveSubsystem = new SwerveSubsystem();
+    // The only place the drivetrain is chosen, PoseEstimator, the black box and the bindings below all follow it
+    if (Constants.TankConstants.IS_TANK_DRIVE) {
+      swerveSubsystem = null;
+      tankSubsystem = TankSubsystem.getInstance();
+      PoseEstimator.setOdometrySource(tankSubsystem);
+    } else {
+      tankSubsystem = null;
+      swerveSubsystem = SwerveSubsystem.getInstance();
+      PoseEstimator.setOdometrySource(swerveSubsystem);
+      BlackBoxRecorder.getInstance().setModuleStates(swerveSubsystem::getSwerveModuleStates, swerveSubsystem::getDesiredModuleStates);
+    }
+    PoseEstimator.getInstance(); // Starts fusing odometry and vision right away so the pose is ready before anything aims with it
+    FlowField.getInstance(); // Builds the distance maps for every goal at startup instead of during the match
     shooterSubsystem = new ShooterSubsystem();
     climberSubsystem = new ClimberSubsystem();
     intakeSubsystem = new IntakeSubsystem();
@@ -121,6 +143,18 @@ public class RobotContainer {
     autonomousChooser = AutoBuilder.buildAutoChooser();
     SmartDashboard.putData("Autonomous Chooser", autonomousChooser);
 
+    /* Characterization routines, the selected one runs when the robot is enabled in test mode */
+    sysIdChooser = new SendableChooser<>();
+    sysIdChooser.setDefaultOption("None", Commands.none());
+    if (swerveSubsystem != null) {
+      sysIdChooser.addOption("Swerve Drive", swerveSubsystem.driveCharacterization());
+      sysIdChooser.addOption("Swerve Steer", swerveSubsystem.angleCharacterization());
+    }
+    sysIdChooser.addOption("Lower Shooter", shooterSubsystem.lowerShooterCharacterization());
+    sysIdChooser.addOption("Upper Shooter", shooterSubsystem.upperShooterCharacterization());
+    sysIdChooser.addOption("Intake Pivot", intakeSubsystem.pivotCharacterization());
+    SmartDashboard.putData("SysId Routine", sysIdChooser);
+
     DriverController = Controller.getDriverController();
     OperatorController = Controller.getOperatorController();
 
@@ -128,6 +162,7 @@ public class RobotContainer {
     robotCentric = new JoystickButton(DriverController, Constants.ControllerRawButtons.XboxController.Button.kX.value);
     findScorePosition = new JoystickButton(DriverController, Constants.ControllerRawButtons.XboxController.Button.kB.value);
     cycleButton = new JoystickButton(DriverController, Constants.ControllerRawButtons.XboxController.Button.kA.value);
+    aimAtSpeaker = new JoystickButton(DriverController, Constants.ControllerRawButtons.XboxController.Button.kRightBumper.value);
     speakerScoring = new JoystickButton(OperatorController, Constants.ControllerRawButtons.XboxController.Button.kRightBumper.value);
     ampScoring = new JoystickButton(OperatorController, Constants.ControllerRawButtons.XboxController.Button.kLeftBumper.value);
     
@@ -150,21 +185,32 @@ public class RobotContainer {
     pushNote = new IntakePush(intakeSubsystem);
     stopIntake = new StopIntake(intakeSubsystem);
     cyclingShooter = new CycleShooter(shooterSubsystem, intakeSubsystem);
-    goScorePosition = new ScorePositionQuad(swerveSubsystem);
-
-    swerveSubsystem.setDefaultCommand(new SwerveController(
-      swerveSubsystem, 
-      () -> DriverController.getRawAxis(translationAxis),
-      () -> DriverController.getRawAxis(strafeAxis), 
-      () -> -DriverController.getRawAxis(rotationAxis), 
-      () -> robotCentric.getAsBoolean())
-    );
+
+    if (swerveSubsystem != null) {
+      swerveController = new SwerveController(
+        swerveSubsystem, 
+        () -> DriverController.getRawAxis(translationAxis),
+        () -> DriverController.getRawAxis(strafeAxis), 
+        () -> -DriverController.getRawAxis(rotationAxis), 
+        () -> robotCentric.getAsBoolean(),
+        () -> DriverController.getPOV()
+      );
+      swerveSubsystem.setDefaultCommand(swerveController);
+      tankController = null;
+    } else {
+      tankController = new TankController(
+        tankSubsystem,
+        () -> DriverController.getRawAxis(translationAxis),
+        () -> -DriverController.getRawAxis(rotationAxis)
+      );
+      tankSubsystem.setDefaultCommand(tankController);
+      swerveController = null;
+    }
       
     configureButtonBindings();
   }
 
   private void configureButtonBindings() {
-    resetHeading.whileTrue(new InstantCommand(() -> swerveSubsystem.resetHeading()));
     ampScoring.whileTrue(ampController);
     speakerScoring.whileTrue(shooterController);
     cycleButton.whileTrue(cyclingShooter);
@@ -176,7 +222,27 @@ public class RobotContainer {
     outtakeGamePiece.whileTrue(pullNote);
     intakeGamePiece.whileFalse(stopIntake);
     outtakeGamePiece.whileFalse(stopIntake);
-    findScorePosition.whileTrue(goScorePosition);
+
+    // Pathfinding goes through AutoBuilder, so it works with either drivetrain
+    Supplier<Pose2d> speakerScoringPose = () -> FieldConstants.Coordinates.forAlliance(FieldConstants.Coordinates.BLUE_SPEAKER_SCORING, FieldConstants.Coordinates.RED_SPEAKER_SCORING);
+    if (swerveSubsystem != null) {
+      findScorePosition.whileTrue(swerveSubsystem.pathfindToPoseCommand(speakerScoringPose));
+    } else {
+      findScorePosition.whileTrue(tankSubsystem.pathfindToPoseCommand(speakerScoringPose));
+    }
+
+    // Resetting the heading lock and aiming while strafing only make sense on swerve
+    if (swerveSubsystem != null) {
+      resetHeading.whileTrue(new InstantCommand(() -> {
+        swerveSubsystem.resetHeading();
+        swerveController.clearHeadingLock();
+      }));
+      aimAtSpeaker.whileTrue(new AimAtSpeaker(
+        swerveSubsystem,
+        () -> DriverController.getRawAxis(translationAxis),
+        () -> DriverController.getRawAxis(strafeAxis))
+      );
+    }
 
     rightClimberUp.whileTrue(climberSubsystem.rightClimbUp());
     rightClimberUp.whileFalse(new InstantCommand(() -> climberSubsystem.rightClimberReset()));
@@ -192,4 +258,8 @@ public class RobotContainer {
   public Command getAutonomousCommand() {
       return autonomousChooser.getSelected();
   }
+
+  public Command getSysIdCommand() {
+      return sysIdChooser.getSelected();
+  }
 }
@@ -0,0 +1,84 @@
+package frc.robot.commands;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+
+import frc.robot.subsystems.SwerveSubsystem;
+import frc.robot.utilities.PoseEstimator;
+import frc.robot.utilities.Telemetry;
+import frc.robot.utilities.constants.Constants;
+import frc.robot.utilities.constants.FieldConstants;
+
+import java.util.function.DoubleSupplier;
+
+/** Lets the driver translate while the robot's heading keeps tracking the alliance speaker, so it arrives at a shooting position already aimed */
+public class AimAtSpeaker extends Command {
+    private SwerveSubsystem swerveSubsystem;
+    private DoubleSupplier translationSupplier;
+    private DoubleSupplier strafeSupplier;
+
+    private final ProfiledPIDController thetaController = new ProfiledPIDController(
+        Constants.HeadingConstants.aimKP,
+        Constants.HeadingConstants.aimKI,
+        Constants.HeadingConstants.aimKD,
+        new TrapezoidProfile.Constraints(Constants.HeadingConstants.aimMaxAngularVelocity, Constants.HeadingConstants.aimMaxAngularAcceleration)
+    );
+
+    public AimAtSpeaker(SwerveSubsystem swerveSubsystem, DoubleSupplier translationSupplier, DoubleSupplier strafeSupplier) {
+        this.swerveSubsystem = swerveSubsystem;
+        this.translationSupplier = translationSupplier;
+        this.strafeSupplier = strafeSupplier;
+
+        thetaController.enableContinuousInput(-Math.PI, Math.PI);
+        thetaController.setTolerance(Constants.HeadingConstants.aimTolerance);
+
+        addRequirements(swerveSubsystem);
+    }
+
+    @Override
+    public void initialize() {
+        Pose2d pose = PoseEstimator.getInstance().getPosition();
+        thetaController.reset(pose.getRotation().getRadians(), swerveSubsystem.getYawRate());
+    }
+
+    @Override
+    public void execute() {
+        double translationValue = MathUtil.applyDeadband(translationSupplier.getAsDouble(), Constants.DriverConstants.kDeadband);
+        double strafeValue = MathUtil.applyDeadband(strafeSupplier.getAsDouble(), Constants.DriverConstants.kDeadband);
+        Translation2d driverVelocity = new Translation2d(translationValue, strafeValue).times(Constants.SwerveConstants.PhysicalMaxSpeedMetersPerSecond);
+
+        Pose2d pose = PoseEstimator.getInstance().getPosition();
+
+        // The sticks drive in the gyro's frame like SwerveController, the bearing rate needs that velocity in the estimator's field frame
+        Translation2d velocity = driverVelocity.rotateBy(pose.getRotation().minus(swerveSubsystem.getYawRotation2d()));
+        Translation2d speaker = FieldConstants.Coordinates.forAlliance(FieldConstants.Coordinates.BLUE_SPEAKER, FieldConstants.Coordinates.RED_SPEAKER).getTranslation();
+        Translation2d toSpeaker = speaker.minus(pose.getTranslation());
+        double bearing = Math.atan2(toSpeaker.getY(), toSpeaker.getX());
+        double targetHeading = MathUtil.angleModulus(bearing - Constants.HeadingConstants.shooterHeadingOffset.getRadians());
+
+        // Driving past the speaker swings the bearing to it, so the goal moves at that rate instead of the robot lagging behind
+        double distanceSquared = Math.max(toSpeaker.getNorm() * toSpeaker.getNorm(), 1e-6);
+        double bearingRate = (toSpeaker.getY() * velocity.getX() - toSpeaker.getX() * velocity.getY()) / distanceSquared;
+
+        double correction = thetaController.calculate(pose.getRotation().getRadians(), new TrapezoidProfile.State(targetHeading, bearingRate));
+        double rotation = correction + thetaController.getSetpoint().velocity;
+
+        // Translation stays field relative to the gyro so the sticks feel the same as the default command, only the rotation is taken over
+        swerveSubsystem.drive(driverVelocity, rotation, true, Constants.DriverConstants.teleopOpenLoop);
+
+        if (Telemetry.isEnabled(Telemetry.Level.TUNING)) {
+            SmartDashboard.putNumber("Speaker Aim Error", Math.toDegrees(MathUtil.angleModulus(targetHeading - pose.getRotation().getRadians())));
+        }
+        SmartDashboard.putBoolean("Aimed At Speaker", thetaController.atGoal());
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        SmartDashboard.putBoolean("Aimed At Speaker", false);
+    }
+}
@@ -0,0 +1,194 @@
+package frc.robot.commands;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.path.PathPlannerTrajectory;
+import com.pathplanner.lib.util.PathPlannerLogging;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+
+import frc.robot.subsystems.SwerveSubsystem;
+import frc.robot.utilities.DrivetrainLimits;
+import frc.robot.utilities.VelocityProfiler;
+import frc.robot.utilities.constants.Constants;
+
+/**
+ * Drives an on-the-fly path to a target pose. The path and its trajectory are both generated on a worker thread so
+ * starting the command doesn't stall the main loop, the robot holds still until they're ready, and the last one is
+ * reused if neither the robot nor the target moved much since it was built. The main loop only samples the
+ * trajectory and runs the holonomic controller.
+ *
+ * <p>If the robot is already on the target's position there's no path to build between two points that are the
+ * same, so it only turns in place to the target's heading, and finishes right away if that's already close too.
+ */
+public class OnTheFlyPath extends Command {
+    private static final ExecutorService pathBuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OnTheFlyPathBuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class BuiltPath {
+        private final Pose2d start;
+        private final Pose2d target;
+        private final PathPlannerPath path;
+        private final PathPlannerTrajectory trajectory;
+
+        private BuiltPath(Pose2d start, Pose2d target, PathPlannerPath path, PathPlannerTrajectory trajectory) {
+            this.start = start;
+            this.target = target;
+            this.path = path;
+            this.trajectory = trajectory;
+        }
+    }
+
+    private static volatile BuiltPath lastBuiltPath = null;
+
+    private static final VelocityProfiler profiler = new VelocityProfiler(DrivetrainLimits.getInstance());
+
+    private SwerveSubsystem swerveSubsystem;
+    private Supplier<Pose2d> targetPose;
+
+    private final PPHolonomicDriveController controller = new PPHolonomicDriveController(
+        Constants.AutonomousConstants.TranslationPID,
+        Constants.AutonomousConstants.RotationalPID,
+        Constants.AutonomousConstants.PhysicalMaxSpeedMetersPerSecond,
+        Constants.AutonomousConstants.DriveBaseRadius);
+    private final PIDController headingController = new PIDController(
+        Constants.AutonomousConstants.RotationalPID.kP,
+        Constants.AutonomousConstants.RotationalPID.kI,
+        Constants.AutonomousConstants.RotationalPID.kD);
+    private final Timer timer = new Timer();
+
+    private Future<BuiltPath> pendingPath;
+    private BuiltPath following;
+    private Rotation2d turnTarget;
+    private boolean failed;
+    private boolean arrived;
+
+    public OnTheFlyPath(SwerveSubsystem swerveSubsystem, Supplier<Pose2d> targetPose) {
+        this.swerveSubsystem = swerveSubsystem;
+        this.targetPose = targetPose;
+
+        headingController.enableContinuousInput(-Math.PI, Math.PI);
+
+        addRequirements(swerveSubsystem);
+    }
+
+    /* Runs on the worker, the robot is held still while it waits so the trajectory starts from rest */
+    private static BuiltPath buildPath(Pose2d start, Pose2d target) {
+        // The bezier poses' rotations are the direction of travel, not the robot's heading
+        Rotation2d travelDirection = target.getTranslation().minus(start.getTranslation()).getAngle();
+
+        // Constrained by the drivetrain's velocity profile along the path instead of one fixed set of constraints
+        PathPlannerPath path = profiler.createPath(
+            PathPlannerPath.bezierFromPoses(new Pose2d(start.getTranslation(), travelDirection), new Pose2d(target.getTranslation(), travelDirection)),
+            new GoalEndState(0, target.getRotation()));
+
+        return new BuiltPath(start, target, path, new PathPlannerTrajectory(path, new ChassisSpeeds(), start.getRotation()));
+    }
+
+    private static boolean isClose(Pose2d a, Pose2d b) {
+        return a.getTranslation().getDistance(b.getTranslation()) < Constants.AutonomousConstants.OnTheFlyReuseDistance
+            && Math.abs(a.getRotation().minus(b.getRotation()).getRadians()) < Constants.AutonomousConstants.OnTheFlyReuseAngle;
+    }
+
+    private void startFollowing(BuiltPath builtPath) {
+        lastBuiltPath = builtPath;
+        following = builtPath;
+
+        controller.reset(swerveSubsystem.getPose(), swerveSubsystem.getRobotRelativeSpeeds());
+        PathPlannerLogging.logActivePath(builtPath.path);
+        timer.restart();
+    }
+
+    @Override
+    public void initialize() {
+        // Sample the target and the start exactly once, so the path is built from one consistent snapshot
+        Pose2d target = targetPose.get();
+        Pose2d start = swerveSubsystem.getPose();
+
+        following = null;
+        pendingPath = null;
+        turnTarget = null;
+        failed = false;
+        arrived = false;
+
+        // A path has no direction of travel when start and target are the same point, and a bezier path can't turn in place
+        if (start.getTranslation().getDistance(target.getTranslation()) < Constants.AutonomousConstants.OnTheFlyArrivedDistance) {
+            turnTarget = target.getRotation();
+            headingController.reset();
+            return;
+        }
+
+        BuiltPath cached = lastBuiltPath;
+        if (cached != null && isClose(cached.target, target) && isClose(cached.start, start)) {
+            startFollowing(cached);
+        } else {
+            pendingPath = pathBuilder.submit(() -> buildPath(start, target));
+        }
+    }
+
+    @Override
+    public void execute() {
+        Pose2d pose = swerveSubsystem.getPose();
+
+        if (turnTarget != null) {
+            arrived = Math.abs(pose.getRotation().minus(turnTarget).getRadians()) < Constants.AutonomousConstants.OnTheFlyArrivedAngle;
+            if (!arrived) {
+                double rotation = headingController.calculate(pose.getRotation().getRadians(), turnTarget.getRadians());
+                swerveSubsystem.driveRobotRelative(new ChassisSpeeds(0.0, 0.0, rotation));
+            }
+            return;
+        }
+
+        if (following == null) {
+            if (!pendingPath.isDone()) {
+                swerveSubsystem.stop();
+                return;
+            }
+
+            try {
+                startFollowing(pendingPath.get());
+            } catch (InterruptedException | ExecutionException e) {
+                DriverStation.reportError("Failed to build on-the-fly path: " + e.getMessage(), e.getStackTrace());
+                failed = true;
+                return;
+            }
+        }
+
+        PathPlannerTrajectory.State targetState = following.trajectory.sample(timer.get());
+        PathPlannerLogging.logCurrentPose(pose);
+        PathPlannerLogging.logTargetPose(targetState.getTargetHolonomicPose());
+        swerveSubsystem.driveRobotRelative(controller.calculateRobotRelativeSpeeds(pose, targetState));
+    }
+
+    @Override
+    public boolean isFinished() {
+        return arrived || failed || (following != null && timer.hasElapsed(following.trajectory.getTotalTimeSeconds()));
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        if (following == null && pendingPath != null) {
+            pendingPath.cancel(false);
+        }
+
+        timer.stop();
+        PathPlannerLogging.logActivePath(null);
+        swerveSubsystem.stop();
+    }
+}
@@ -1,7 +1,8 @@
 package frc.robot.commands;
 
 import edu.wpi.first.math.MathUtil;
-import edu.wpi.first.math.filter.SlewRateLimiter;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.Command;
 
@@ -10,6 +11,7 @@ import frc.robot.subsystems.SwerveSubsystem;
 
 import java.util.function.BooleanSupplier;
 import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
 
 public class SwerveController extends Command {
     private SwerveSubsystem swerveSubsystem;
@@ -17,27 +19,78 @@ public class SwerveController extends Command {
     private DoubleSupplier strafeSupplier;
     private DoubleSupplier rotationSupplier;
     private BooleanSupplier robotCentricSupplier;
+    private IntSupplier snapAngleSupplier;
 
-    private SlewRateLimiter translationLimiter = new SlewRateLimiter(2.9);
-    private SlewRateLimiter strafeLimiter = new SlewRateLimiter(2.9);
-    private SlewRateLimiter rotationLimiter = new SlewRateLimiter(2.9);
+    private final PIDController headingController = new PIDController(Constants.HeadingConstants.headingKP, Constants.HeadingConstants.headingKI, Constants.HeadingConstants.headingKD);
+    private Rotation2d targetHeading = null; // The heading being held, null while the driver is rotating
 
-    public SwerveController(SwerveSubsystem swerveSubsystem, DoubleSupplier translationSupplier, DoubleSupplier strafeSupplier, DoubleSupplier rotationSupplier, BooleanSupplier robotCentricSupplier) {
+    /**
+    * @param snapAngleSupplier The D-pad angle (Constants.ControllerRawButtons.DPAD_*), snaps the robot to face that direction on the field.
+    */
+    public SwerveController(SwerveSubsystem swerveSubsystem, DoubleSupplier translationSupplier, DoubleSupplier strafeSupplier, DoubleSupplier rotationSupplier, BooleanSupplier robotCentricSupplier, IntSupplier snapAngleSupplier) {
         this.swerveSubsystem = swerveSubsystem;
         this.translationSupplier = translationSupplier;
         this.strafeSupplier = strafeSupplier;
         this.rotationSupplier = rotationSupplier;
         this.robotCentricSupplier = robotCentricSupplier;
+        this.snapAngleSupplier = snapAngleSupplier;
+
+        headingController.enableContinuousInput(-Math.PI, Math.PI);
+        headingController.setTolerance(Constants.HeadingConstants.headingTolerance);
 
         addRequirements(swerveSubsystem);
     }
 
+    /** Stops holding the current heading, needed whenever the gyro is re-zeroed so the robot doesn't turn back to the old heading */
+    public void clearHeadingLock() {
+        targetHeading = null;
+        headingController.reset();
+    }
+
+    @Override
+    public void initialize() {
+        clearHeadingLock();
+    }
+
     @Override
     public void execute() {
-        double translationValue = translationLimiter.calculate(MathUtil.applyDeadband(translationSupplier.getAsDouble(), Constants.DriverConstants.kDeadband));
-        double strafeValue = strafeLimiter.calculate(MathUtil.applyDeadband(strafeSupplier.getAsDouble(), Constants.DriverConstants.kDeadband));
-        double rotationValue = rotationLimiter.calculate(MathUtil.applyDeadband(rotationSupplier.getAsDouble(), Constants.DriverConstants.kDeadband));
+        // Acceleration is limited per module by the SwerveSubsystem's setpoint generator, so the inputs are passed straight through
+        double translationValue = MathUtil.applyDeadband(translationSupplier.getAsDouble(), Constants.DriverConstants.kDeadband);
+        double strafeValue = MathUtil.applyDeadband(strafeSupplier.getAsDouble(), Constants.DriverConstants.kDeadband);
+        double rotationValue = MathUtil.applyDeadband(rotationSupplier.getAsDouble(), Constants.DriverConstants.kDeadband);
+
+        swerveSubsystem.drive(new Translation2d(translationValue, strafeValue).times(Constants.SwerveConstants.PhysicalMaxSpeedMetersPerSecond), calculateRotation(rotationValue), !robotCentricSupplier.getAsBoolean(), Constants.DriverConstants.teleopOpenLoop);
+    }
+
+    /* Passes the stick through while the driver is rotating, otherwise holds the last heading or the D-pad snap angle */
+    private double calculateRotation(double rotationValue) {
+        int snapAngle = snapAngleSupplier.getAsInt();
+        double yawRate = swerveSubsystem.getYawRate();
+
+        if (rotationValue != 0.0) {
+            clearHeadingLock();
+            return rotationValue * Constants.SwerveConstants.PhysicalAngularMaxVelocity;
+        }
+
+        if (snapAngle != Constants.ControllerRawButtons.DPAD_NOT_PRESSED) {
+            // The D-pad angle is clockwise from downfield while the heading is counterclockwise
+            targetHeading = Rotation2d.fromDegrees(-snapAngle);
+        } else if (targetHeading == null) {
+            // Let the robot coast out of the turn the driver just made before capturing the heading to hold
+            if (Math.abs(yawRate) > Constants.HeadingConstants.captureYawRate) {
+                return 0.0;
+            }
+
+            targetHeading = swerveSubsystem.getYawRotation2d();
+            headingController.reset();
+        }
+
+        double correction = headingController.calculate(swerveSubsystem.getYawRotation2d().getRadians(), targetHeading.getRadians());
+        if (headingController.atSetpoint()) {
+            correction = 0.0;
+        }
 
-        swerveSubsystem.drive(new Translation2d(translationValue, strafeValue).times(Constants.SwerveConstants.PhysicalMaxSpeedMetersPerSecond), rotationValue * Constants.SwerveConstants.PhysicalAngularMaxVelocity, !robotCentricSupplier.getAsBoolean(), true);
+        double maxCorrection = Constants.SwerveConstants.PhysicalAngularMaxVelocity * Constants.HeadingConstants.maxCorrectionFraction;
+        return MathUtil.clamp(correction - Constants.HeadingConstants.yawRateDamping * yawRate, -maxCorrection, maxCorrection);
     }
-}
\ No newline at end of file
+}
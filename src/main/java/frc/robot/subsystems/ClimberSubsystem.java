@@ -9,8 +9,13 @@ import com.revrobotics.RelativeEncoder;
 import com.revrobotics.SparkPIDController;
 import com.revrobotics.CANSparkLowLevel.MotorType;
 
-import frc.robot.utilities.CANSparkMaxUtil;
+import frc.robot.utilities.BlackBoxRecorder;
+import frc.robot.utilities.CANBusBudget;
+import frc.robot.utilities.CANHealthMonitor;
 import frc.robot.utilities.CANSparkMaxUtil.Usage;
+import frc.robot.utilities.PowerManager;
+import frc.robot.utilities.RobotLogger;
+import frc.robot.utilities.Telemetry;
 import frc.robot.utilities.constants.Constants;
 import frc.robot.utilities.constants.Constants.ClimberConstants;
 
@@ -21,6 +26,10 @@ public class ClimberSubsystem extends SubsystemBase {
     private RelativeEncoder rightClimbEncoder;
     private RelativeEncoder leftClimbEncoder;
 
+    /* Last commanded outputs, activity is read from these instead of get() */
+    private double rightOutput = 0.0;
+    private double leftOutput = 0.0;
+
     public ClimberSubsystem() {
         rightClimbMotor = new CANSparkMax(ClimberConstants.RightClimbMotorID, MotorType.kBrushless);
         leftClimbMotor = new CANSparkMax(ClimberConstants.LeftClimbMotorID, MotorType.kBrushless);
@@ -34,7 +43,12 @@ public class ClimberSubsystem extends SubsystemBase {
 
     private void configureRightClimbMotor() {
         rightClimbMotor.restoreFactoryDefaults();
+        CANBusBudget.getInstance().register(rightClimbMotor, Usage.kPositionOnly, Usage.kMinimal, () -> rightOutput != 0.0);
+        CANHealthMonitor.getInstance().registerSparkMax("Right Climber", rightClimbMotor);
+        RobotLogger.getInstance().addDouble("Climber/RightCurrent", rightClimbMotor::getOutputCurrent);
+        BlackBoxRecorder.getInstance().addOutput("Right Climber Output", rightClimbMotor::getAppliedOutput);
         rightClimbMotor.setSmartCurrentLimit(ClimberConstants.rightClimbContinuousCurrentLimit);
+        PowerManager.getInstance().register("Right Climber", rightClimbMotor, Constants.PowerConstants.climberBudget, () -> rightOutput);
         rightClimbMotor.setInverted(ClimberConstants.rightClimbInvert);
         rightClimbMotor.setIdleMode(ClimberConstants.rightClimbNeutralMode);
         rightClimbMotor.enableVoltageCompensation(ClimberConstants.voltageCompensation);
@@ -44,7 +58,12 @@ public class ClimberSubsystem extends SubsystemBase {
 
     private void configureLeftClimbMotor() {
         leftClimbMotor.restoreFactoryDefaults();
+        CANBusBudget.getInstance().register(leftClimbMotor, Usage.kPositionOnly, Usage.kMinimal, () -> leftOutput != 0.0);
+        CANHealthMonitor.getInstance().registerSparkMax("Left Climber", leftClimbMotor);
+        RobotLogger.getInstance().addDouble("Climber/LeftCurrent", leftClimbMotor::getOutputCurrent);
+        BlackBoxRecorder.getInstance().addOutput("Left Climber Output", leftClimbMotor::getAppliedOutput);
         leftClimbMotor.setSmartCurrentLimit(ClimberConstants.leftClimbContinuousCurrentLimit);
+        PowerManager.getInstance().register("Left Climber", leftClimbMotor, Constants.PowerConstants.climberBudget, () -> leftOutput);
         leftClimbMotor.setInverted(ClimberConstants.leftClimbInvert);
         leftClimbMotor.setIdleMode(ClimberConstants.leftClimbNeutralMode);
         leftClimbMotor.enableVoltageCompensation(ClimberConstants.voltageCompensation);
@@ -52,40 +71,54 @@ public class ClimberSubsystem extends SubsystemBase {
         leftClimbEncoder.setPosition(0.0);
     }
 
+    private void setRightOutput(double output) {
+        rightOutput = output;
+        rightClimbMotor.set(output);
+    }
+
+    private void setLeftOutput(double output) {
+        leftOutput = output;
+        leftClimbMotor.set(output);
+    }
+
     public Command rightClimbUp() {
         return run(() -> {
-            rightClimbMotor.set(ClimberConstants.climbSpeed);
+            setRightOutput(ClimberConstants.climbSpeed);
         }).withName("RightClimbUp");
     }
 
     public Command rightClimbDown() {
         return run(() -> {
-            rightClimbMotor.set(-ClimberConstants.climbSpeed);
+            setRightOutput(-ClimberConstants.climbSpeed);
         }).withName("RightClimbDown");
     }
 
     public Command leftClimbUp() {
         return run(() -> {
-            leftClimbMotor.set(ClimberConstants.climbSpeed);
+            setLeftOutput(ClimberConstants.climbSpeed);
         }).withName("LeftClimbUp");
     }
 
     public Command leftClimbDown() {
         return run(() -> {
-            leftClimbMotor.set(-ClimberConstants.climbSpeed);
+            setLeftOutput(-ClimberConstants.climbSpeed);
         }).withName("LeftClimbDown");
     }
 
     public void rightClimberReset() {
-        rightClimbMotor.set(0.0);
+        setRightOutput(0.0);
     }
 
     public void leftClimberReset() {
-        leftClimbMotor.set(0.0);
+        setLeftOutput(0.0);
     }
 
     @Override
     public void periodic() {
+        if (!Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+            return;
+        }
+
         SmartDashboard.putNumber("Right Climber Enocder", rightClimbEncoder.getPosition());
         SmartDashboard.putNumber("Left Climber Enocder", leftClimbEncoder.getPosition());
     }
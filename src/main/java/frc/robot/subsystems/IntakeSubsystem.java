@@ -1,10 +1,23 @@
 package frc.robot.subsystems;
 
+import static edu.wpi.first.units.MutableMeasure.mutable;
+import static edu.wpi.first.units.Units.Degrees;
+import static edu.wpi.first.units.Units.DegreesPerSecond;
+import static edu.wpi.first.units.Units.Second;
+import static edu.wpi.first.units.Units.Seconds;
+import static edu.wpi.first.units.Units.Volts;
+
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.units.Angle;
+import edu.wpi.first.units.Measure;
+import edu.wpi.first.units.MutableMeasure;
+import edu.wpi.first.units.Velocity;
+import edu.wpi.first.units.Voltage;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.RelativeEncoder;
@@ -19,8 +32,13 @@ import com.ctre.phoenix6.configs.CANcoderConfiguration;
 import com.ctre.phoenix6.configs.CANcoderConfigurator;
 import com.ctre.phoenix6.configs.MagnetSensorConfigs;
 
-import frc.robot.utilities.CANSparkMaxUtil;
+import frc.robot.utilities.BlackBoxRecorder;
+import frc.robot.utilities.CANBusBudget;
+import frc.robot.utilities.CANHealthMonitor;
 import frc.robot.utilities.CANSparkMaxUtil.Usage;
+import frc.robot.utilities.PowerManager;
+import frc.robot.utilities.RobotLogger;
+import frc.robot.utilities.SysIdUtil;
 import frc.robot.utilities.constants.Constants;
 
 public class IntakeSubsystem extends SubsystemBase {
@@ -50,6 +68,33 @@ public class IntakeSubsystem extends SubsystemBase {
     private IntakeStatus status = IntakeStatus.STORED;
     private IntakeDirection direction = IntakeDirection.STOPPED;
 
+    /* Last commanded outputs, activity is read from these since get() misses voltage and closed loop commands */
+    private double rollerOutput = 0.0;
+    private double pivotOutput = 0.0;
+
+    /* Reused every loop while characterizing instead of allocating new measures */
+    private final MutableMeasure<Voltage> commandedVoltage = mutable(Volts.of(0)); // The applied output's Status 0 frame is too slow to log
+    private final MutableMeasure<Angle> pivotAngle = mutable(Degrees.of(0));
+    private final MutableMeasure<Velocity<Angle>> pivotVelocity = mutable(DegreesPerSecond.of(0));
+
+    private final SysIdRoutine pivotRoutine = new SysIdRoutine(
+        new SysIdRoutine.Config(
+            Volts.per(Second).of(Constants.SysIdConstants.pivotRampVoltsPerSecond),
+            Volts.of(Constants.SysIdConstants.pivotStepVolts),
+            Seconds.of(Constants.SysIdConstants.pivotTimeoutSeconds)),
+        new SysIdRoutine.Mechanism(
+            (Measure<Voltage> volts) -> {
+                pivotMotor.setVoltage(volts.in(Volts));
+                pivotOutput = volts.in(Volts) / Constants.IntakeConstants.voltageCompensation;
+                commandedVoltage.mut_replace(volts);
+            },
+            log -> log.motor("intake-pivot")
+                .voltage(commandedVoltage)
+                .angularPosition(pivotAngle.mut_replace(pivotEncoder.getPosition(), Degrees))
+                .angularVelocity(pivotVelocity.mut_replace(pivotEncoder.getVelocity(), DegreesPerSecond)),
+            this)
+    );
+
     public IntakeSubsystem() {
         setName("Intakaur");
 
@@ -72,7 +117,11 @@ public class IntakeSubsystem extends SubsystemBase {
 
     private void configureRollerMotor() {
         rollerMotor.restoreFactoryDefaults();
-        CANSparkMaxUtil.setCANSparkMaxBusUsage(rollerMotor, Usage.kAll);
+        CANBusBudget.getInstance().register(rollerMotor, Usage.kVelocityOnly, Usage.kMinimal, () -> rollerOutput != 0.0);
+        CANHealthMonitor.getInstance().registerSparkMax("Intake Roller", rollerMotor);
+        RobotLogger.getInstance().addDouble("Intake/RollerCurrent", rollerMotor::getOutputCurrent);
+        BlackBoxRecorder.getInstance().addOutput("Intake Roller Output", rollerMotor::getAppliedOutput);
+        PowerManager.getInstance().register("Intake Roller", rollerMotor, Constants.PowerConstants.intakeRollerBudget, () -> rollerOutput);
         rollerMotor.setIdleMode(Constants.IntakeConstants.rollerMotorNeutralMode);
         rollerMotor.enableVoltageCompensation(Constants.IntakeConstants.voltageCompensation);
         rollerMotor.burnFlash();
@@ -80,9 +129,15 @@ public class IntakeSubsystem extends SubsystemBase {
 
     private void configurePivotMotor() {
         pivotMotor.restoreFactoryDefaults();
-        CANSparkMaxUtil.setCANSparkMaxBusUsage(pivotMotor, Usage.kAll);
+        // Position stays fast while idle too, so anything holding the pivot in closed loop never works from a stale angle
+        CANBusBudget.getInstance().register(pivotMotor, Usage.kAll, Usage.kPositionOnly, () -> pivotOutput != 0.0);
+        CANHealthMonitor.getInstance().registerSparkMax("Intake Pivot", pivotMotor);
+        RobotLogger.getInstance().addDouble("Intake/PivotCurrent", pivotMotor::getOutputCurrent);
+        BlackBoxRecorder.getInstance().addOutput("Intake Pivot Output", pivotMotor::getAppliedOutput);
+        PowerManager.getInstance().register("Intake Pivot", pivotMotor, Constants.PowerConstants.intakePivotBudget, () -> pivotOutput);
         pivotMotor.setIdleMode(Constants.IntakeConstants.pivotMotorNeutralMode);
         pivotEncoder.setPositionConversionFactor(Constants.IntakeConstants.AngleConversionFactor);
+        pivotEncoder.setVelocityConversionFactor(Constants.IntakeConstants.AngleConversionFactor / 60.0);
         pivotPIDController.setFeedbackDevice(pivotEncoder);
         pivotPIDController.setP(Constants.IntakeConstants.pivotKP);
         pivotPIDController.setI(Constants.IntakeConstants.pivotKI);
@@ -139,31 +194,55 @@ public class IntakeSubsystem extends SubsystemBase {
 
     */
 
+    private void setPivotOutput(double output) {
+        pivotOutput = output;
+        pivotMotor.set(output);
+    }
+
+    private void setRollerOutput(double output) {
+        rollerOutput = output;
+        rollerMotor.set(output);
+    }
+
     public Command deployIntake() {
         return run(() -> {
-            pivotMotor.set(0.25);
+            setPivotOutput(0.25);
         }).withName("Deploy Intake");
     }
 
     public void intkeOut(){
-        pivotMotor.set(0.3);
+        setPivotOutput(0.3);
         System.out.println("out");
     }
 
     public void intkeIn(){
-        pivotMotor.set(-0.3);
+        setPivotOutput(-0.3);
     }
 
     public void stop(){
-        pivotMotor.set(0);
+        setPivotOutput(0);
     }
 
     public Command storeIntake() {
         return run(() -> {
-            pivotMotor.set(-0.25);
+            setPivotOutput(-0.25);
         }).withName("Store Intake");
     }
 
+    /**
+    * Command to characterize the pivot, runs with a reduced ramp and step and ends each test before the pivot
+    * reaches its hard stops. The pivot carries its own weight, so analyze the log with the Arm mechanism in the
+    * SysId tool to get kG along with kS, kV and kA; the angle is logged from the same zero getnewFF treats as level.
+    * @return command running the quasistatic and dynamic SysId tests in both directions
+    */
+    public Command pivotCharacterization() {
+        return SysIdUtil.fullRoutine(
+            pivotRoutine,
+            () -> pivotEncoder.getPosition() >= Constants.SysIdConstants.pivotMaxDegrees,
+            () -> pivotEncoder.getPosition() <= Constants.SysIdConstants.pivotMinDegrees)
+            .withName("Intake Pivot SysId");
+    }
+
     public void setIntakeState(IntakeDirection direction) {
         if (direction == IntakeDirection.FORWARD) {
             this.direction = IntakeDirection.FORWARD;
@@ -176,26 +255,26 @@ public class IntakeSubsystem extends SubsystemBase {
 
     //we felt a little silly with the names
     public void intakeConsume() {
-        rollerMotor.set(-0.3); //whatever makes motor take thingy
+        setRollerOutput(-0.3); //whatever makes motor take thingy
         setIntakeState(IntakeDirection.FORWARD);
     }
 
     public void intakeRegurgitate() {
-        rollerMotor.set(0.3); //whatever makes motor release thingy
+        setRollerOutput(0.3); //whatever makes motor release thingy
         setIntakeState(IntakeDirection.REVERSE);
     }
 
     public void intakeToShooter() {
-        rollerMotor.set(0.1);
+        setRollerOutput(0.1);
     }
 
     public void stopIntake() {
-        rollerMotor.set(0);
+        setRollerOutput(0);
         setIntakeState(IntakeDirection.STOPPED);
     }
 
     public void reset() {
-        rollerMotor.set(0);
+        setRollerOutput(0);
     }
 
     /* 
@@ -1,13 +1,31 @@
 package frc.robot.subsystems;
 
+import static edu.wpi.first.units.MutableMeasure.mutable;
+import static edu.wpi.first.units.Units.RPM;
+import static edu.wpi.first.units.Units.Rotations;
+import static edu.wpi.first.units.Units.Volts;
+
 import com.revrobotics.CANSparkMax;
+import com.revrobotics.RelativeEncoder;
 import com.revrobotics.CANSparkLowLevel.MotorType;
 
+import edu.wpi.first.units.Angle;
+import edu.wpi.first.units.Measure;
+import edu.wpi.first.units.MutableMeasure;
+import edu.wpi.first.units.Velocity;
+import edu.wpi.first.units.Voltage;
 import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 
-import frc.robot.utilities.CANSparkMaxUtil;
+import frc.robot.utilities.BlackBoxRecorder;
+import frc.robot.utilities.CANBusBudget;
+import frc.robot.utilities.CANHealthMonitor;
 import frc.robot.utilities.CANSparkMaxUtil.Usage;
+import frc.robot.utilities.PowerManager;
+import frc.robot.utilities.RobotLogger;
+import frc.robot.utilities.SysIdUtil;
 import frc.robot.utilities.constants.Constants;
 
 public class ShooterSubsystem extends SubsystemBase {
@@ -15,17 +33,54 @@ public class ShooterSubsystem extends SubsystemBase {
     public CANSparkMax lowerShooterMotor;
     public CANSparkMax upperShooterMotor;
 
+    private final SysIdRoutine lowerShooterRoutine;
+    private final SysIdRoutine upperShooterRoutine;
+
+    /* Last commanded outputs, activity is read from these since get() misses voltage commands */
+    private double lowerOutput = 0.0;
+    private double upperOutput = 0.0;
+
+    /* Reused every loop while characterizing instead of allocating new measures */
+    private final MutableMeasure<Angle> angle = mutable(Rotations.of(0));
+    private final MutableMeasure<Velocity<Angle>> angularVelocity = mutable(RPM.of(0));
+
     public ShooterSubsystem() {
         lowerShooterMotor = new CANSparkMax(Constants.ShooterConstants.lowerShooterMotorID, MotorType.kBrushless);
         upperShooterMotor = new CANSparkMax(Constants.ShooterConstants.upperShooterMotorID, MotorType.kBrushless);
 
         configureLowerShooterMotor();
         configureUpperShooterMotor();
+
+        lowerShooterRoutine = createFlywheelRoutine(lowerShooterMotor, "lower-shooter");
+        upperShooterRoutine = createFlywheelRoutine(upperShooterMotor, "upper-shooter");
+    }
+
+    private SysIdRoutine createFlywheelRoutine(CANSparkMax motor, String name) {
+        RelativeEncoder encoder = motor.getEncoder();
+        MutableMeasure<Voltage> commandedVoltage = mutable(Volts.of(0)); // The applied output's Status 0 frame is too slow to log
+
+        return new SysIdRoutine(
+            new SysIdRoutine.Config(),
+            new SysIdRoutine.Mechanism(
+                (Measure<Voltage> volts) -> {
+                    motor.setVoltage(volts.in(Volts));
+                    commandedVoltage.mut_replace(volts);
+                },
+                log -> log.motor(name)
+                    .voltage(commandedVoltage)
+                    .angularPosition(angle.mut_replace(encoder.getPosition(), Rotations))
+                    .angularVelocity(angularVelocity.mut_replace(encoder.getVelocity(), RPM)),
+                this)
+        );
     }
 
     public void configureLowerShooterMotor() {
         lowerShooterMotor.restoreFactoryDefaults();
-        CANSparkMaxUtil.setCANSparkMaxBusUsage(lowerShooterMotor, Usage.kAll);
+        CANBusBudget.getInstance().register(lowerShooterMotor, Usage.kVelocityOnly, Usage.kMinimal, () -> lowerOutput != 0.0);
+        CANHealthMonitor.getInstance().registerSparkMax("Lower Shooter", lowerShooterMotor);
+        RobotLogger.getInstance().addDouble("Shooter/LowerCurrent", lowerShooterMotor::getOutputCurrent);
+        BlackBoxRecorder.getInstance().addOutput("Lower Shooter Output", lowerShooterMotor::getAppliedOutput);
+        PowerManager.getInstance().register("Lower Shooter", lowerShooterMotor, Constants.PowerConstants.shooterBudget, () -> lowerOutput);
         lowerShooterMotor.setInverted(Constants.ShooterConstants.lowerShooterMotorInvert);
         lowerShooterMotor.setIdleMode(Constants.ShooterConstants.lowerShooterMotorNeutralMode);
         lowerShooterMotor.enableVoltageCompensation(Constants.ShooterConstants.voltageCompensation);
@@ -34,26 +89,44 @@ public class ShooterSubsystem extends SubsystemBase {
 
     public void configureUpperShooterMotor() {
         upperShooterMotor.restoreFactoryDefaults();
-        CANSparkMaxUtil.setCANSparkMaxBusUsage(upperShooterMotor, Usage.kAll);
+        CANBusBudget.getInstance().register(upperShooterMotor, Usage.kVelocityOnly, Usage.kMinimal, () -> upperOutput != 0.0);
+        CANHealthMonitor.getInstance().registerSparkMax("Upper Shooter", upperShooterMotor);
+        RobotLogger.getInstance().addDouble("Shooter/UpperCurrent", upperShooterMotor::getOutputCurrent);
+        BlackBoxRecorder.getInstance().addOutput("Upper Shooter Output", upperShooterMotor::getAppliedOutput);
+        PowerManager.getInstance().register("Upper Shooter", upperShooterMotor, Constants.PowerConstants.shooterBudget, () -> upperOutput);
         upperShooterMotor.setInverted(Constants.ShooterConstants.upperShooterMotorInvert);
         upperShooterMotor.setIdleMode(Constants.ShooterConstants.upperShooterMotorNeutralMode);
         upperShooterMotor.enableVoltageCompensation(Constants.ShooterConstants.voltageCompensation);
         upperShooterMotor.burnFlash();
     }
 
+    private void setOutputs(double lower, double upper) {
+        lowerOutput = lower;
+        upperOutput = upper;
+        lowerShooterMotor.set(lower);
+        upperShooterMotor.set(upper);
+    }
+
     public void shooterAmpScoring() {
-        lowerShooterMotor.set(Constants.ShooterConstants.ampScorerSpeed);
-        upperShooterMotor.set(Constants.ShooterConstants.ampScorerSpeed);
+        setOutputs(Constants.ShooterConstants.ampScorerSpeed, Constants.ShooterConstants.ampScorerSpeed);
     }
 
     public void shooterSpeakerScoring() {
-        lowerShooterMotor.set(Constants.ShooterConstants.shooterScorerSpeed);
-        upperShooterMotor.set(Constants.ShooterConstants.shooterScorerSpeed);
+        setOutputs(Constants.ShooterConstants.shooterScorerSpeed, Constants.ShooterConstants.shooterScorerSpeed);
     }
 
     public void stopShooter() {
-        lowerShooterMotor.set(0.0);
-        upperShooterMotor.set(0.0);
+        setOutputs(0.0, 0.0);
+    }
+
+    /* The flywheels are characterized one at a time, since they have different loads */
+
+    public Command lowerShooterCharacterization() {
+        return SysIdUtil.fullRoutine(lowerShooterRoutine).withName("Lower Shooter SysId");
+    }
+
+    public Command upperShooterCharacterization() {
+        return SysIdUtil.fullRoutine(upperShooterRoutine).withName("Upper Shooter SysId");
     }
 
     @Override
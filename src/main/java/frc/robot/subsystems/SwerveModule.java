@@ -2,6 +2,9 @@
 
 package frc.robot.subsystems;
 
+import java.util.function.BooleanSupplier;
+
+import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.hardware.CANcoder;
 import com.ctre.phoenix6.signals.AbsoluteSensorRangeValue;
 import com.ctre.phoenix6.signals.SensorDirectionValue;
@@ -16,6 +19,8 @@ import com.revrobotics.SparkPIDController;
 import com.revrobotics.CANSparkLowLevel.MotorType;
 
 import static edu.wpi.first.units.MutableMeasure.mutable;
+import static edu.wpi.first.units.Units.Degrees;
+import static edu.wpi.first.units.Units.DegreesPerSecond;
 import static edu.wpi.first.units.Units.Meters;
 import static edu.wpi.first.units.Units.MetersPerSecond;
 import static edu.wpi.first.units.Units.Volts;
@@ -24,18 +29,18 @@ import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.units.Angle;
 import edu.wpi.first.units.Distance;
-import edu.wpi.first.units.Measure;
 import edu.wpi.first.units.MutableMeasure;
 import edu.wpi.first.units.Velocity;
 import edu.wpi.first.units.Voltage;
-import edu.wpi.first.wpilibj.RobotController;
-import edu.wpi.first.wpilibj2.command.Command;
-import edu.wpi.first.wpilibj2.command.Subsystem;
-import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.sysid.SysIdRoutineLog;
 import frc.robot.Robot;
-import frc.robot.utilities.CANSparkMaxUtil;
+import frc.robot.utilities.CANBusBudget;
+import frc.robot.utilities.CANHealthMonitor;
 import frc.robot.utilities.OnboardModuleState;
+import frc.robot.utilities.PowerManager;
 import frc.robot.utilities.CANSparkMaxUtil.Usage;
 import frc.robot.utilities.constants.Constants;
 import frc.robot.utilities.constants.SwerveModuleConstants;
@@ -47,6 +52,8 @@ public class SwerveModule {
     private Rotation2d angleOffset;
 
     private SwerveModuleState expectedState = new SwerveModuleState();
+    private double lastSpeedSetpoint = 0.0;
+    private double lastSpeedSetpointTimestamp = Double.NaN;
 
     private CANSparkMax driveMotor;
     private CANSparkMax angleMotor;
@@ -55,28 +62,21 @@ public class SwerveModule {
     private RelativeEncoder angleEncoder;
     private CANcoder swerveEncoder;
     private CANcoderConfigurator swerveEncoderConfigurator;
+    private StatusSignal<Double> swerveEncoderAbsolutePosition;
 
     private final SparkPIDController drivePIDController;
     private final SparkPIDController anglePIDController;
 
-    /* 
-
-    private final MutableMeasure<Voltage> m_appliedVoltage = mutable(Volts.of(0));
-    private final MutableMeasure<Distance> m_distance = mutable(Meters.of(0));
-    private final MutableMeasure<Velocity<Distance>> m_velocity = mutable(MetersPerSecond.of(0));
+    private volatile double swerveEncoderTimestamp = 0.0; // Best available timestamp (seconds) of the latest absolute position, changes with every frame received, read by the CAN health monitor's thread
+    private BooleanSupplier swerveEncoderStale = () -> false;
 
-    private final SysIdRoutine m_sysIdRoutine = new SysIdRoutine(new SysIdRoutine.Config(), new SysIdRoutine.Mechanism((Measure<Voltage> volts) -> {
-            driveMotor.setVoltage(volts.in(Volts));
-        },
-        log -> {
-            log.motor("swerveDriveMotor").voltage(m_appliedVoltage.mut_replace(driveMotor.get() * RobotController.getBatteryVoltage(), Volts))
-                .linearPosition(m_distance.mut_replace(driveEncocder.getPosition(), Meters))
-                .linearVelocity(m_velocity.mut_replace(driveEncocder.getVelocity(), MetersPerSecond));
-        },
-        (Subsystem) this)
-    );
-
-    */
+    /* Reused every loop while characterizing instead of allocating new measures */
+    private final MutableMeasure<Voltage> driveVoltage = mutable(Volts.of(0)); // Commanded, the applied output's Status 0 frame is too slow to log
+    private final MutableMeasure<Voltage> angleVoltage = mutable(Volts.of(0));
+    private final MutableMeasure<Distance> distance = mutable(Meters.of(0));
+    private final MutableMeasure<Velocity<Distance>> velocity = mutable(MetersPerSecond.of(0));
+    private final MutableMeasure<Angle> angle = mutable(Degrees.of(0));
+    private final MutableMeasure<Velocity<Angle>> angularVelocity = mutable(DegreesPerSecond.of(0));
 
     private final SimpleMotorFeedforward feedforward = new SimpleMotorFeedforward(Constants.ModuleConstants.driveKS, Constants.ModuleConstants.driveKV, Constants.ModuleConstants.driveKA);
 
@@ -99,6 +99,10 @@ public class SwerveModule {
         configureDriveMotor();
 
         lastAngle = getSwerveModuleState().angle;
+
+        CANHealthMonitor.getInstance().registerSparkMax("Module " + moduleNumber + " Drive", driveMotor);
+        CANHealthMonitor.getInstance().registerSparkMax("Module " + moduleNumber + " Angle", angleMotor);
+        swerveEncoderStale = CANHealthMonitor.getInstance().register("Module " + moduleNumber + " CANcoder", () -> swerveEncoderTimestamp, () -> Constants.CANBusConstants.CANcoderUpdatePeriodSeconds);
     }
 
     private void configureSwerveEncoder() {
@@ -109,15 +113,24 @@ public class SwerveModule {
         magnetSensorConfiguration.SensorDirection = SensorDirectionValue.CounterClockwise_Positive;
         magnetSensorConfiguration.MagnetOffset = angleOffset.getRotations();
         swerveEncoderConfigurator.apply(new CANcoderConfiguration().withMagnetSensor(magnetSensorConfiguration));
+
+        // Only the absolute position is used, so every other signal is turned off and the position is refreshed in one batch by the SwerveSubsystem
+        swerveEncoderAbsolutePosition = swerveEncoder.getAbsolutePosition();
+        swerveEncoderAbsolutePosition.setUpdateFrequency(1.0 / Constants.CANBusConstants.CANcoderUpdatePeriodSeconds);
+        swerveEncoder.optimizeBusUtilization();
+        swerveEncoderAbsolutePosition.waitForUpdate(Constants.CANBusConstants.CANcoderInitialUpdateTimeoutSeconds);
+        swerveEncoderTimestamp = swerveEncoderAbsolutePosition.getTimestamp().getTime();
     }
 
     private void configureAngleMotor() {
         angleMotor.restoreFactoryDefaults();
-        CANSparkMaxUtil.setCANSparkMaxBusUsage(angleMotor, Usage.kPositionOnly);
+        CANBusBudget.getInstance().register(angleMotor, Usage.kPositionOnly, Usage.kPositionOnly, () -> true);
         angleMotor.setSmartCurrentLimit(Constants.ModuleConstants.angleContinuousCurrentLimit);
+        PowerManager.getInstance().register("Module " + moduleNumber + " Angle", angleMotor, Constants.PowerConstants.steerBudget, () -> (lastSpeedSetpoint != 0.0) ? 1.0 : 0.0); // Steering is closed loop with no known duty, assumed fully loaded while the module drives
         angleMotor.setInverted(Constants.SwerveConstants.angleInvert);
         angleMotor.setIdleMode(Constants.SwerveConstants.angleNeutralMode);
         angleEncoder.setPositionConversionFactor(Constants.SwerveConstants.AngleConversionFactor);
+        angleEncoder.setVelocityConversionFactor(Constants.SwerveConstants.AngleConversionFactor / 60.0);
         anglePIDController.setFeedbackDevice(angleEncoder);
         anglePIDController.setP(Constants.ModuleConstants.angleKP);
         anglePIDController.setI(Constants.ModuleConstants.angleKI);
@@ -130,24 +143,46 @@ public class SwerveModule {
 
     private void configureDriveMotor() {
         driveMotor.restoreFactoryDefaults();
-        CANSparkMaxUtil.setCANSparkMaxBusUsage(driveMotor, Usage.kAll);
+        CANBusBudget.getInstance().register(driveMotor, Usage.kAll, Usage.kPositionOnly, () -> true);
         driveMotor.setSmartCurrentLimit(Constants.ModuleConstants.driveContinuousCurrentLimit);
+        PowerManager.getInstance().register("Module " + moduleNumber + " Drive", driveMotor, Constants.PowerConstants.driveBudget, () -> lastSpeedSetpoint / Constants.SwerveConstants.PhysicalMaxSpeedMetersPerSecond); // Exact open loop, close enough closed loop
         driveMotor.setInverted(Constants.SwerveConstants.driveInvert);
         driveMotor.setIdleMode(Constants.SwerveConstants.driveNeutralMode);
-        driveEncocder.setVelocityConversionFactor(Constants.SwerveConstants.DriveConversionPositionFactor);
-        driveEncocder.setPositionConversionFactor(Constants.SwerveConstants.DriveConversionVelocityFactor);
+        driveEncocder.setPositionConversionFactor(Constants.SwerveConstants.DriveConversionPositionFactor);
+        driveEncocder.setVelocityConversionFactor(Constants.SwerveConstants.DriveConversionVelocityFactor);
         drivePIDController.setFeedbackDevice(driveEncocder);
-        drivePIDController.setP(Constants.ModuleConstants.angleKP);
-        drivePIDController.setI(Constants.ModuleConstants.angleKI);
-        drivePIDController.setD(Constants.ModuleConstants.angleKD);
-        drivePIDController.setFF(Constants.ModuleConstants.angleKFF);
+        drivePIDController.setP(Constants.ModuleConstants.driveKP);
+        drivePIDController.setI(Constants.ModuleConstants.driveKI);
+        drivePIDController.setD(Constants.ModuleConstants.driveKD);
+        drivePIDController.setFF(Constants.ModuleConstants.driveKFF);
         driveMotor.enableVoltageCompensation(Constants.ModuleConstants.voltageCompensation);
         driveMotor.burnFlash();
         driveEncocder.setPosition(0.0);
     }
 
+    /** Returns the absolute position signal so it can be refreshed together with the other modules' */
+    public StatusSignal<Double> getSwerveEncoderSignal() {
+        return swerveEncoderAbsolutePosition;
+    }
+
+    /** Records the timestamp of the absolute position, call after the signal has been refreshed */
+    public void updateSwerveEncoderTimestamp() {
+        swerveEncoderTimestamp = swerveEncoderAbsolutePosition.getTimestamp().getTime();
+    }
+
+    /** Returns the absolute position from the last batched refresh, doesn't wait on the CAN bus */
     public Rotation2d getSwerveEncoder() {
-        return Rotation2d.fromRotations(swerveEncoder.getAbsolutePosition().getValueAsDouble());
+        return Rotation2d.fromRotations(swerveEncoderAbsolutePosition.getValueAsDouble());
+    }
+
+    /** Returns the FPGA time (seconds) the cached absolute position was measured at, from the CANcoder frame's latency */
+    public double getSwerveEncoderTimestamp() {
+        return Timer.getFPGATimestamp() - swerveEncoderAbsolutePosition.getTimestamp().getLatency();
+    }
+
+    /** Returns whether the CANcoder stopped sending fresh data, the Spark Maxes are only monitored for diagnostics (see CANHealthMonitor) */
+    public boolean isDataStale() {
+        return swerveEncoderStale.getAsBoolean();
     }
 
     public Rotation2d getAngle() {
@@ -162,11 +197,26 @@ public class SwerveModule {
         return new SwerveModuleState(driveEncocder.getVelocity(), getAngle());
     }
 
+    /** Returns the drive motor's output current in amps, from its last status frame */
+    public double getDriveCurrent() {
+        return driveMotor.getOutputCurrent();
+    }
+
+    /** Returns the angle motor's output current in amps, from its last status frame */
+    public double getAngleCurrent() {
+        return angleMotor.getOutputCurrent();
+    }
+
     public SwerveModulePosition getSwerveModulePosition() {
         return new SwerveModulePosition(driveEncocder.getPosition(), getAngle());
     }
 
     public void resetToAbsolute() {
+        // Re-seeding from a stale CANcoder would throw the module off, keep the relative encoder until it recovers
+        if (swerveEncoderStale.getAsBoolean()) {
+            return;
+        }
+
         double absolutePosition = getSwerveEncoder().getDegrees();
         angleEncoder.setPosition(absolutePosition);
     }
@@ -176,6 +226,9 @@ public class SwerveModule {
         if(Math.abs(desiredState.speedMetersPerSecond) < 0.006) {
             driveMotor.set(0);
             angleMotor.set(0);
+            expectedState = new SwerveModuleState(0.0, lastAngle);
+            lastSpeedSetpoint = 0.0;
+            lastSpeedSetpointTimestamp = Timer.getFPGATimestamp(); // Kept current while stopped so starting off gets its acceleration term
 
             if(desiredState.angle == lastAngle) {
                 resetToAbsolute();;
@@ -192,12 +245,23 @@ public class SwerveModule {
     }
 
     private void setSpeed(SwerveModuleState desiredState, boolean isOpenLoop) {
+        double speed = desiredState.speedMetersPerSecond;
+        double timestamp = Timer.getFPGATimestamp();
+
         if (isOpenLoop) {
-            double percentOutput = desiredState.speedMetersPerSecond / Constants.SwerveConstants.PhysicalMaxSpeedMetersPerSecond;
+            double percentOutput = speed / Constants.SwerveConstants.PhysicalMaxSpeedMetersPerSecond;
             driveMotor.set(percentOutput);
         } else {
-            drivePIDController.setReference(desiredState.speedMetersPerSecond, CANSparkMax.ControlType.kVelocity, 0, feedforward.calculate(desiredState.speedMetersPerSecond));
+            // The acceleration term comes from the change in setpoint, skipped when the wheel reverses since optimizing the state flips the sign without the wheel actually accelerating
+            double dt = timestamp - lastSpeedSetpointTimestamp;
+            boolean flipped = speed != 0.0 && lastSpeedSetpoint != 0.0 && Math.signum(speed) != Math.signum(lastSpeedSetpoint);
+            double acceleration = (dt > 0.0 && !flipped) ? (speed - lastSpeedSetpoint) / dt : 0.0;
+
+            drivePIDController.setReference(speed, CANSparkMax.ControlType.kVelocity, 0, feedforward.calculate(speed, acceleration), SparkPIDController.ArbFFUnits.kVoltage);
         }
+
+        lastSpeedSetpoint = speed;
+        lastSpeedSetpointTimestamp = timestamp;
     }
 
     private void setAngle(SwerveModuleState desiredState) {
@@ -224,15 +288,33 @@ public class SwerveModule {
         stopAngleMotor();
     }
 
-    /* 
+    /** Drives the wheel with a raw voltage while holding the module straight, used for characterization */
+    public void runDriveCharacterization(double volts) {
+        anglePIDController.setReference(0.0, CANSparkMax.ControlType.kPosition);
+        driveMotor.setVoltage(volts);
+        driveVoltage.mut_replace(volts, Volts);
+    }
 
-    public Command sysIdQuasistatic(SysIdRoutine.Direction direction) {
-        return m_sysIdRoutine.quasistatic(direction);
+    /** Steers the module with a raw voltage while the wheel is stopped, used for characterization */
+    public void runAngleCharacterization(double volts) {
+        driveMotor.set(0);
+        angleMotor.setVoltage(volts);
+        angleVoltage.mut_replace(volts, Volts);
     }
 
-    public Command sysIdDynamic(SysIdRoutine.Direction direction) {
-        return m_sysIdRoutine.dynamic(direction);
+    /** Logs the drive motor's voltage, distance and velocity for SysId */
+    public void logDriveCharacterization(SysIdRoutineLog log) {
+        log.motor("drive-" + moduleNumber)
+            .voltage(driveVoltage)
+            .linearPosition(distance.mut_replace(driveEncocder.getPosition(), Meters))
+            .linearVelocity(velocity.mut_replace(driveEncocder.getVelocity(), MetersPerSecond));
     }
 
-    */
+    /** Logs the steering motor's voltage, angle and angular velocity for SysId */
+    public void logAngleCharacterization(SysIdRoutineLog log) {
+        log.motor("angle-" + moduleNumber)
+            .voltage(angleVoltage)
+            .angularPosition(angle.mut_replace(angleEncoder.getPosition(), Degrees))
+            .angularVelocity(angularVelocity.mut_replace(angleEncoder.getVelocity(), DegreesPerSecond));
+    }
 }
\ No newline at end of file
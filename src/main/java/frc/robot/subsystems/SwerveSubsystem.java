@@ -1,11 +1,14 @@
 //Import required packages to apply swerve drive to robot.
 package frc.robot.subsystems;
 
+import static edu.wpi.first.units.Units.Volts;
+
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 
-import com.kauailabs.navx.frc.AHRS;
+import com.ctre.phoenix6.BaseStatusSignal;
 
 import com.pathplanner.lib.auto.AutoBuilder;
 import com.pathplanner.lib.commands.FollowPathHolonomic;
@@ -18,9 +21,11 @@ import com.pathplanner.lib.util.PIDConstants;
 import com.pathplanner.lib.util.PathPlannerLogging;
 import com.pathplanner.lib.util.ReplanningConfig;
 
+import edu.wpi.first.math.Vector;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.ProfiledPIDController;
-import edu.wpi.first.math.estimator.PoseEstimator;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.filter.LinearFilter;
 import edu.wpi.first.math.filter.SlewRateLimiter;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
@@ -28,12 +33,16 @@ import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.math.kinematics.SwerveDriveWheelPositions;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.units.Measure;
+import edu.wpi.first.units.Voltage;
+import edu.wpi.first.util.datalog.StructLogEntry;
 import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.SPI;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
@@ -43,17 +52,43 @@ import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.RepeatCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
-
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+
+import frc.robot.commands.OnTheFlyPath;
+import frc.robot.utilities.CANHealthMonitor;
+import frc.robot.utilities.DrivetrainLimits;
+import frc.robot.utilities.GyroService;
+import frc.robot.utilities.OdometrySource;
+import frc.robot.utilities.PoseEstimator;
+import frc.robot.utilities.RobotLogger;
+import frc.robot.utilities.SwerveSetpointGenerator;
+import frc.robot.utilities.SysIdUtil;
+import frc.robot.utilities.Telemetry;
+import frc.robot.utilities.VelocityProfiler;
 import frc.robot.utilities.constants.Constants;
 
 /* Sets up class that assigns motors to each swerve module and get swerving.
 * Methods created to handle different actions taken on the controls.
 */
-public class SwerveSubsystem extends SubsystemBase {
-    private final AHRS gyro;
+public class SwerveSubsystem extends SubsystemBase implements OdometrySource<SwerveDriveWheelPositions> {
+    private static SwerveSubsystem instance;
+
+    public static SwerveSubsystem getInstance() {
+        if (instance == null) instance = new SwerveSubsystem();
+        return instance;
+    }
 
-    private SwerveDriveOdometry swerveOdometry;
+    private final GyroService gyro;
+    private final BooleanSupplier gyroStale;
+
+    private SwerveDriveOdometry swerveOdometry; // Wheel and gyro only, PoseEstimator owns the robot's pose and this is kept to see how far it drifts from it
+    private SwerveModulePosition[] latestModulePositions;
+    private Rotation2d latestYaw;
+    private boolean latestSampleStale = false;
     private SwerveModule[] swerveModules;
+    private BaseStatusSignal[] swerveEncoderSignals;
+    private SwerveSetpointGenerator setpointGenerator;
+    private final LinearFilter trackingErrorFilter = LinearFilter.movingAverage((int) Math.round(Constants.ModuleConstants.driveTrackingErrorWindowSeconds / 0.02));
 
     private SlewRateLimiter translationLimiter = new SlewRateLimiter(2.9);
     private SlewRateLimiter strafeLimiter = new SlewRateLimiter(2.9);
@@ -61,8 +96,41 @@ public class SwerveSubsystem extends SubsystemBase {
 
     private Field2d field;
 
-    public SwerveSubsystem() {
-        gyro = new AHRS(SPI.Port.kMXP);
+    private final SysIdRoutine driveRoutine = new SysIdRoutine(
+        new SysIdRoutine.Config(),
+        new SysIdRoutine.Mechanism(
+            (Measure<Voltage> volts) -> {
+                for(SwerveModule module : swerveModules) {
+                    module.runDriveCharacterization(volts.in(Volts));
+                }
+            },
+            log -> {
+                for(SwerveModule module : swerveModules) {
+                    module.logDriveCharacterization(log);
+                }
+            },
+            this)
+    );
+
+    private final SysIdRoutine angleRoutine = new SysIdRoutine(
+        new SysIdRoutine.Config(),
+        new SysIdRoutine.Mechanism(
+            (Measure<Voltage> volts) -> {
+                for(SwerveModule module : swerveModules) {
+                    module.runAngleCharacterization(volts.in(Volts));
+                }
+            },
+            log -> {
+                for(SwerveModule module : swerveModules) {
+                    module.logAngleCharacterization(log);
+                }
+            },
+            this)
+    );
+
+    private SwerveSubsystem() {
+        gyro = GyroService.getInstance();
+        gyroStale = CANHealthMonitor.getInstance().register("NavX", gyro::getSampleCount, () -> Constants.CANBusConstants.navXUpdatePeriodSeconds);
 
         resetHeading();
         
@@ -73,12 +141,27 @@ public class SwerveSubsystem extends SubsystemBase {
             new SwerveModule(3,Constants.ModuleConstants.BackRightModule.constants)
         };
 
-        swerveOdometry = new SwerveDriveOdometry(Constants.SwerveConstants.SwerveKinematics, getYawRotation2d(), getSwerveModulePositions());
+        swerveEncoderSignals = new BaseStatusSignal[swerveModules.length];
+        for(int i = 0; i < swerveModules.length; i++) {
+            swerveEncoderSignals[i] = swerveModules[i].getSwerveEncoderSignal();
+        }
+
+        setpointGenerator = new SwerveSetpointGenerator(
+            Constants.SwerveConstants.SwerveKinematics,
+            Constants.SwerveConstants.ModuleLocations,
+            Constants.SwerveConstants.PhysicalMaxSpeedMetersPerSecond,
+            Constants.SwerveConstants.MaxModuleAcceleration,
+            Constants.SwerveConstants.MaxModuleSteeringVelocity
+        );
+
+        latestYaw = getYawRotation2d();
+        latestModulePositions = getSwerveModulePositions();
+        swerveOdometry = new SwerveDriveOdometry(Constants.SwerveConstants.SwerveKinematics, latestYaw, latestModulePositions);
         field = new Field2d();
 
         AutoBuilder.configureHolonomic(
             this::getPose, 
-            this::resetSwerveOdometry,
+            this::resetPose,
             this::getRobotRelativeSpeeds, 
             this::driveRobotRelative, 
             new HolonomicPathFollowerConfig(
@@ -98,20 +181,44 @@ public class SwerveSubsystem extends SubsystemBase {
             this
         );
 
-        PathPlannerLogging.setLogActivePathCallback((poses) -> field.getObject("path").setPoses(poses));
+        // The pose the path follower is aiming for, compared against the estimate to get path tracking error
+        StructLogEntry<Pose2d> targetPoseLog = StructLogEntry.create(RobotLogger.getInstance().getLog(), "Path/TargetPose", Pose2d.struct);
+        PathPlannerLogging.setLogTargetPoseCallback(targetPoseLog::append);
+        PathPlannerLogging.setLogActivePathCallback((poses) -> {
+            if (Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+                field.getObject("path").setPoses(poses);
+            }
+        });
         SmartDashboard.putData("Field", field);
+
+        registerLogging();
+    }
+
+    private void registerLogging() {
+        RobotLogger logger = RobotLogger.getInstance();
+
+        logger.addStructArray("Swerve/MeasuredStates", SwerveModuleState.struct, this::getSwerveModuleStates);
+        logger.addStructArray("Swerve/DesiredStates", SwerveModuleState.struct, this::getDesiredModuleStates);
+        logger.addStructArray("Swerve/ModulePositions", SwerveModulePosition.struct, this::getLatestModulePositions);
+        logger.addStruct("Swerve/OdometryPose", Pose2d.struct, this::getOdometryPose);
+        logger.addBoolean("Swerve/DataStale", this::isLatestSampleStale);
+
+        for(SwerveModule module : swerveModules) {
+            logger.addDouble("Swerve/Module" + module.moduleNumber + "/DriveCurrent", module::getDriveCurrent);
+            logger.addDouble("Swerve/Module" + module.moduleNumber + "/AngleCurrent", module::getAngleCurrent);
+        }
     }
 
     public void drive(Translation2d translation, double rotation, boolean fieldRelative, boolean isOpenLoop) {
-        SwerveModuleState[] swerveModuleStates = Constants.SwerveConstants.SwerveKinematics.toSwerveModuleStates(fieldRelative 
+        ChassisSpeeds desiredSpeeds = fieldRelative 
             ? ChassisSpeeds.fromFieldRelativeSpeeds(translation.getX(), translation.getY(), rotation, getYawRotation2d())
-            : new ChassisSpeeds(translation.getX(), translation.getY(), rotation)
-        );
+            : new ChassisSpeeds(translation.getX(), translation.getY(), rotation);
 
-        SwerveDriveKinematics.desaturateWheelSpeeds(swerveModuleStates, Constants.SwerveConstants.PhysicalMaxSpeedMetersPerSecond);
+        // Limits how fast each module can accelerate and steer so large direction changes don't have the wheels fighting each other
+        SwerveModuleState[] swerveModuleStates = setpointGenerator.generate(desiredSpeeds, getSwerveModuleStates());
 
         for(SwerveModule module : swerveModules) {
-            module.setDesiredState(swerveModuleStates[module.moduleNumber], false);
+            module.setDesiredState(swerveModuleStates[module.moduleNumber], isOpenLoop);
         }
     }
 
@@ -268,20 +375,24 @@ public class SwerveSubsystem extends SubsystemBase {
     */
 
     public Command onTheFlyPathCommand(Supplier<Pose2d> targetPose) {
-        return new DeferredCommand(() -> followUnflippedPathCommand(
-            new PathPlannerPath(
-                PathPlannerPath.bezierFromPoses(new Pose2d(this.getPose().getTranslation(), Rotation2d.fromDegrees(0)), targetPose.get()),
-                new PathConstraints(
-                    Constants.SwerveConstants.PhysicalMaxSpeedMetersPerSecond,
-                    Constants.SwerveConstants.PhysicalMaxAcceleration,
-                    Constants.SwerveConstants.PhysicalAngularMaxVelocity,
-                    Constants.SwerveConstants.PhysicalMaxAngularAcceleration),
-                new GoalEndState(0, targetPose.get().getRotation()),
-                false)),
-            //.until(
-                // () -> targetPose.get().getTranslation().getDistance(PoseEstimator.getInstance().getPosition().getTranslation())<1.5))
-                //.finallyDo(() -> System.out.println("uwu owo"));
-        Set.of(this));
+        return new OnTheFlyPath(this, targetPose);
+    }
+
+    /**
+    * Command to pathfind around the field obstacles in navgrid.json to a pose. Paths are planned on PathPlanner's
+    * background thread, and the robot starts driving as soon as the first path from its live pose is ready.
+    * @param targetPose the Supplier<Pose2d> that the robot should drive to, sampled when the command starts
+    * @return command to pathfind to and then follow a path to the pose
+    */
+
+    public Command pathfindToPoseCommand(Supplier<Pose2d> targetPose) {
+        // Pathfinding only takes one set of constraints, so it gets the best the drivetrain can do from the same limits on-the-fly paths are profiled with
+        return new DeferredCommand(() -> AutoBuilder.pathfindToPose(
+                targetPose.get(),
+                new VelocityProfiler(DrivetrainLimits.getInstance()).getGlobalConstraints(),
+                0.0,
+                Constants.AutonomousConstants.PathfindingRotationDelayDistance),
+            Set.of(this));
     }
 
     /**
@@ -330,6 +441,24 @@ public class SwerveSubsystem extends SubsystemBase {
         return new SequentialCommandGroup(chasePoseCommand(target), onTheFlyPathCommand(target));
     }
 
+    /**
+    * Command to characterize the drive motors, the modules are held straight so the robot drives forwards and backwards
+    * @return command running the quasistatic and dynamic SysId tests in both directions
+    */
+
+    public Command driveCharacterization() {
+        return SysIdUtil.fullRoutine(driveRoutine).withName("Swerve Drive SysId");
+    }
+
+    /**
+    * Command to characterize the steering motors, the wheels are stopped so the modules spin in place
+    * @return command running the quasistatic and dynamic SysId tests in both directions
+    */
+
+    public Command angleCharacterization() {
+        return SysIdUtil.fullRoutine(angleRoutine).withName("Swerve Steer SysId");
+    }
+
     public SwerveModuleState[] getSwerveModuleStates() {
         SwerveModuleState[] states = new SwerveModuleState[4];
         for(SwerveModule module : swerveModules) {
@@ -339,6 +468,16 @@ public class SwerveSubsystem extends SubsystemBase {
         return states;
     }
 
+    /** Returns the states the modules were last commanded to */
+    public SwerveModuleState[] getDesiredModuleStates() {
+        SwerveModuleState[] states = new SwerveModuleState[4];
+        for(SwerveModule module : swerveModules) {
+            states[module.moduleNumber] = module.getDesiredState();
+        }
+
+        return states;
+    }
+
     public SwerveModulePosition[] getSwerveModulePositions() {
         SwerveModulePosition[] positions = new SwerveModulePosition[4];
         for(SwerveModule module : swerveModules) {
@@ -354,32 +493,85 @@ public class SwerveSubsystem extends SubsystemBase {
 
     public void setModuleStates(SwerveModuleState[] desiredStates) {
         SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, Constants.SwerveConstants.PhysicalMaxSpeedMetersPerSecond);
+        setpointGenerator.setPreviousSetpoint(desiredStates); // Path following already produces feasible states, start from them when the driver takes over
 
         for(SwerveModule module : swerveModules) {
             module.setDesiredState(desiredStates[module.moduleNumber], false);
         }
     }
 
+    /** Returns the robot's pose from the pose estimator, the one pose everything should drive and aim from */
     public Pose2d getPose() {
-       return swerveOdometry.getPoseMeters();
+       return PoseEstimator.getInstance().getPosition();
+    }
+
+    /** Returns the pose from wheel odometry alone, only for comparing against the estimate */
+    @Override
+    public Pose2d getOdometryPose() {
+        return swerveOdometry.getPoseMeters();
+    }
+
+    /** Returns the module positions sampled once at the start of this loop, so odometry and the estimator read the same values */
+    public SwerveModulePosition[] getLatestModulePositions() {
+        return latestModulePositions;
+    }
+
+    /** Returns the yaw sampled once at the start of this loop, alongside getLatestModulePositions() */
+    public Rotation2d getLatestYaw() {
+        return latestYaw;
+    }
+
+    /** Returns whether the drivetrain data sampled this loop was stale and shouldn't be used for odometry */
+    public boolean isLatestSampleStale() {
+        return latestSampleStale;
     }
 
     public double getHeading() {
-        return Math.IEEEremainder(gyro.getAngle(),360)*(Constants.SwerveConstants.gyroInverted ? -1.0 : 1.0);
+        return gyro.getRawYaw()*(Constants.SwerveConstants.gyroInverted ? -1.0 : 1.0);
     }
 
+    /** Returns the latest yaw the NavX sent, see GyroService */
     public Rotation2d getYawRotation2d() {
-        return (Constants.SwerveConstants.swerveEncoderInverted) ? Rotation2d.fromDegrees(getHeading()) : Rotation2d.fromDegrees(360-getHeading());
+        return gyro.getYaw();
+    }
+
+    /** Returns the rate the robot is turning in radians per second, with the same sign convention as getYawRotation2d() */
+    public double getYawRate() {
+        return gyro.getYawRate();
     }
 
     public double getRawHeading() {
-        return gyro.getYaw();
+        return gyro.getRawYaw();
     }
 
+    /** Resets the robot's pose, the estimate and the wheel odometry together */
+    public void resetPose(Pose2d pose) {
+        PoseEstimator.getInstance().resetPoseEstimate(pose);
+    }
+
+    /** Resets only the wheel odometry, use resetPose() to move the robot's pose */
     public void resetSwerveOdometry(Pose2d pose) {
         swerveOdometry.resetPosition(getYawRotation2d(), getSwerveModulePositions(), pose);
     }
 
+    @Override
+    public edu.wpi.first.math.estimator.PoseEstimator<SwerveDriveWheelPositions> createPoseEstimator(Pose2d initialPose, Vector<N3> stateStdDevs, Vector<N3> visionStdDevs) {
+        return new SwerveDrivePoseEstimator(Constants.SwerveConstants.SwerveKinematics, latestYaw, latestModulePositions, initialPose, stateStdDevs, visionStdDevs);
+    }
+
+    @Override
+    public void updatePoseEstimator(edu.wpi.first.math.estimator.PoseEstimator<SwerveDriveWheelPositions> estimator) {
+        if (!latestSampleStale) {
+            estimator.update(latestYaw, new SwerveDriveWheelPositions(latestModulePositions));
+        }
+    }
+
+    @Override
+    public void resetPoseEstimator(edu.wpi.first.math.estimator.PoseEstimator<SwerveDriveWheelPositions> estimator, Pose2d pose) {
+        resetSwerveOdometry(pose);
+        estimator.resetPosition(getYawRotation2d(), new SwerveDriveWheelPositions(getSwerveModulePositions()), pose);
+    }
+
     public void resetModulesToAbsolute() {
         for(SwerveModule module : swerveModules) {
             module.resetToAbsolute();
@@ -396,11 +588,72 @@ public class SwerveSubsystem extends SubsystemBase {
         }
     }
 
+    /** Returns the RMS difference between the commanded and measured wheel speeds averaged over the last few loops */
+    private double calculateTrackingError() {
+        double squaredError = 0.0;
+        for(SwerveModule module : swerveModules) {
+            double error = module.getDesiredState().speedMetersPerSecond - module.getSwerveModuleState().speedMetersPerSecond;
+            squaredError += error * error;
+        }
+
+        return Math.sqrt(trackingErrorFilter.calculate(squaredError / swerveModules.length));
+    }
+
+    /** Returns whether the gyro or any swerve module stopped sending fresh data */
+    public boolean isDrivetrainDataStale() {
+        if (gyroStale.getAsBoolean()) {
+            return true;
+        }
+
+        for(SwerveModule module : swerveModules) {
+            if (module.isDataStale()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /** Refreshes every module's absolute position in a single batched CAN read */
+    private void refreshSwerveEncoders() {
+        BaseStatusSignal.refreshAll(swerveEncoderSignals);
+
+        for(SwerveModule module : swerveModules) {
+            module.updateSwerveEncoderTimestamp();
+        }
+    }
+
     @Override
     public void periodic() {
+        long periodicStart = RobotLogger.now();
 
-        swerveOdometry.update(getYawRotation2d(), getSwerveModulePositions());
+        // Runs before any command this loop, so commands and re-seeding all read the same absolute positions
+        refreshSwerveEncoders();
+
+        // Sample the modules and the gyro once, PoseEstimator runs after this and updates from the same sample
+        latestYaw = getYawRotation2d();
+        latestModulePositions = getSwerveModulePositions();
+
+        // Hold the last good odometry while data is stale, the accumulated wheel distance is picked back up once it recovers
+        latestSampleStale = isDrivetrainDataStale();
+        if (!latestSampleStale) {
+            swerveOdometry.update(latestYaw, latestModulePositions);
+        }
         field.setRobotPose(getPose());
+        SmartDashboard.putBoolean("Drivetrain Data Stale", latestSampleStale);
+
+        if (Telemetry.isEnabled(Telemetry.Level.TUNING) && DriverStation.isEnabled()) {
+            SmartDashboard.putNumber("Drive Velocity Tracking RMS Error", calculateTrackingError());
+        }
+
+        // The debug dashboard below isn't included, it's off in matches
+        RobotLogger.getInstance().logTiming("Swerve", periodicStart);
+
+        if (!Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+            return;
+        }
+
+        field.getObject("odometry").setPose(getOdometryPose());
 
         double measuredStates[] = {
             swerveModules[0].getSwerveModuleState().angle.getDegrees(),
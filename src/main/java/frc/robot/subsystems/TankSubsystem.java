@@ -1,21 +1,63 @@
 package frc.robot.subsystems;
 
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.FeedbackConfigs;
 import com.ctre.phoenix6.configs.MotorOutputConfigs;
+import com.ctre.phoenix6.configs.Slot0Configs;
 import com.ctre.phoenix6.configs.TalonFXConfiguration;
 import com.ctre.phoenix6.configs.TalonFXConfigurator;
 import com.ctre.phoenix6.controls.Follower;
+import com.ctre.phoenix6.controls.VelocityVoltage;
 import com.ctre.phoenix6.hardware.TalonFX;
 import com.ctre.phoenix6.signals.FeedbackSensorSourceValue;
 import com.ctre.phoenix6.signals.InvertedValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 
+import com.pathplanner.lib.auto.AutoBuilder;
+import com.pathplanner.lib.util.PathPlannerLogging;
+import com.pathplanner.lib.util.ReplanningConfig;
+
+import frc.robot.utilities.CANHealthMonitor;
+import frc.robot.utilities.GyroService;
+import frc.robot.utilities.OdometrySource;
+import frc.robot.utilities.PoseEstimator;
+import frc.robot.utilities.RobotLogger;
 import frc.robot.utilities.constants.Constants;
 
+import edu.wpi.first.math.Vector;
+import edu.wpi.first.math.estimator.DifferentialDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.DifferentialDriveOdometry;
+import edu.wpi.first.math.kinematics.DifferentialDriveWheelPositions;
+import edu.wpi.first.math.kinematics.DifferentialDriveWheelSpeeds;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.util.datalog.StructLogEntry;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.drive.DifferentialDrive;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.DeferredCommand;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
-public class TankSubsystem extends SubsystemBase {
+/* Drives the tank practice base and gives PoseEstimator its wheel odometry, so it runs the same vision fusion,
+* autos and pathfinding as the swerve robot. Only built when RobotContainer picks the tank drivetrain.
+* The leaders' positions and velocities are refreshed together once a loop, and each position is moved forward by
+* its velocity for the time since it was measured, so both sides and the NavX describe the same moment.
+*/
+public class TankSubsystem extends SubsystemBase implements OdometrySource<DifferentialDriveWheelPositions> {
+    private static TankSubsystem instance;
+
+    public static TankSubsystem getInstance() {
+        if (instance == null) instance = new TankSubsystem();
+        return instance;
+    }
+
     private final TalonFX frontRight;
     private final TalonFX backRight;
     private final TalonFX frontLeft;
@@ -33,7 +75,28 @@ public class TankSubsystem extends SubsystemBase {
 
     private DifferentialDrive TankDrive;
 
-    public TankSubsystem() {
+    private final GyroService gyro;
+    private final BooleanSupplier gyroStale;
+    private final BooleanSupplier leftStale;
+    private final BooleanSupplier rightStale;
+
+    /* Only the leaders are read, the followers share their gearbox */
+    private final StatusSignal<Double> leftPosition;
+    private final StatusSignal<Double> leftVelocity;
+    private final StatusSignal<Double> rightPosition;
+    private final StatusSignal<Double> rightVelocity;
+    private final BaseStatusSignal[] odometrySignals;
+    private double leftTimestamp = 0.0;
+    private double rightTimestamp = 0.0;
+
+    private final DifferentialDriveOdometry tankOdometry; // Wheel and gyro only, PoseEstimator owns the robot's pose and this is kept to see how far it drifts from it
+    private DifferentialDriveWheelPositions latestWheelPositions;
+    private Rotation2d latestYaw;
+    private boolean latestSampleStale = false;
+
+    private final VelocityVoltage velocityRequest = new VelocityVoltage(0).withSlot(0);
+
+    private TankSubsystem() {
         frontRight = new TalonFX(Constants.TankConstants.FrontRightID);
         backRight = new TalonFX(Constants.TankConstants.BackRightID);
         frontLeft = new TalonFX(Constants.TankConstants.FrontLeftID);
@@ -55,17 +118,179 @@ public class TankSubsystem extends SubsystemBase {
 
         feedbackConfiguration = new FeedbackConfigs();
         feedbackConfiguration.FeedbackSensorSource = FeedbackSensorSourceValue.RotorSensor;
+        feedbackConfiguration.SensorToMechanismRatio = Constants.TankConstants.GearRatio; // Positions and velocities are in wheel rotations
+
+        Slot0Configs velocityConfiguration = new Slot0Configs();
+        velocityConfiguration.kP = Constants.TankConstants.velocityKP;
+        velocityConfiguration.kS = Constants.TankConstants.velocityKS;
+        velocityConfiguration.kV = Constants.TankConstants.velocityKV;
 
-        frontRightConfigurator.apply(new TalonFXConfiguration().withMotorOutput(rightMotorConfiguration).withFeedback(feedbackConfiguration));
-        backRightConfigurator.apply(new TalonFXConfiguration().withMotorOutput(rightMotorConfiguration).withFeedback(feedbackConfiguration));
-        frontLeftConfigurator.apply(new TalonFXConfiguration().withMotorOutput(leftMotorConfiguration).withFeedback(feedbackConfiguration));
-        backLeftConfigurator.apply(new TalonFXConfiguration().withMotorOutput(leftMotorConfiguration).withFeedback(feedbackConfiguration));
+        frontRightConfigurator.apply(new TalonFXConfiguration().withMotorOutput(rightMotorConfiguration).withFeedback(feedbackConfiguration).withSlot0(velocityConfiguration));
+        backRightConfigurator.apply(new TalonFXConfiguration().withMotorOutput(rightMotorConfiguration).withFeedback(feedbackConfiguration).withSlot0(velocityConfiguration));
+        frontLeftConfigurator.apply(new TalonFXConfiguration().withMotorOutput(leftMotorConfiguration).withFeedback(feedbackConfiguration).withSlot0(velocityConfiguration));
+        backLeftConfigurator.apply(new TalonFXConfiguration().withMotorOutput(leftMotorConfiguration).withFeedback(feedbackConfiguration).withSlot0(velocityConfiguration));
 
         backLeft.setControl(new Follower(frontLeft.getDeviceID(), false));
         backRight.setControl(new Follower(frontRight.getDeviceID(), false));
 
         TankDrive = new DifferentialDrive(frontRight, frontLeft);
         TankDrive.setSafetyEnabled(false);
+
+        // Sent faster than the loop so the latency compensated positions are never far off, refreshed in one batch in periodic()
+        leftPosition = frontLeft.getPosition();
+        leftVelocity = frontLeft.getVelocity();
+        rightPosition = frontRight.getPosition();
+        rightVelocity = frontRight.getVelocity();
+        odometrySignals = new BaseStatusSignal[] {leftPosition, leftVelocity, rightPosition, rightVelocity};
+        BaseStatusSignal.setUpdateFrequencyForAll(Constants.TankConstants.odometryUpdateFrequencyHz, odometrySignals);
+
+        gyro = GyroService.getInstance();
+        gyroStale = CANHealthMonitor.getInstance().register("NavX", gyro::getSampleCount, () -> Constants.CANBusConstants.navXUpdatePeriodSeconds);
+        leftStale = CANHealthMonitor.getInstance().register("Tank Left", () -> leftTimestamp, () -> 1.0 / Constants.TankConstants.odometryUpdateFrequencyHz);
+        rightStale = CANHealthMonitor.getInstance().register("Tank Right", () -> rightTimestamp, () -> 1.0 / Constants.TankConstants.odometryUpdateFrequencyHz);
+
+        gyro.zeroYaw();
+        refreshOdometrySignals();
+        latestYaw = gyro.getYaw();
+        latestWheelPositions = getWheelPositions();
+        tankOdometry = new DifferentialDriveOdometry(latestYaw, latestWheelPositions.leftMeters, latestWheelPositions.rightMeters);
+
+        AutoBuilder.configureRamsete(
+            this::getPose,
+            this::resetPose,
+            this::getRobotRelativeSpeeds,
+            this::driveRobotRelative,
+            new ReplanningConfig(),
+            () -> {
+                var alliance = DriverStation.getAlliance();
+                if (alliance.isPresent()) {
+                    return alliance.get() == DriverStation.Alliance.Red;
+                }
+                return false;
+            },
+            this
+        );
+
+        StructLogEntry<Pose2d> targetPoseLog = StructLogEntry.create(RobotLogger.getInstance().getLog(), "Path/TargetPose", Pose2d.struct);
+        PathPlannerLogging.setLogTargetPoseCallback(targetPoseLog::append);
+
+        RobotLogger logger = RobotLogger.getInstance();
+        logger.addStruct("Tank/OdometryPose", Pose2d.struct, this::getOdometryPose);
+        logger.addDouble("Tank/LeftMeters", () -> latestWheelPositions.leftMeters);
+        logger.addDouble("Tank/RightMeters", () -> latestWheelPositions.rightMeters);
+        logger.addBoolean("Tank/DataStale", () -> latestSampleStale);
+    }
+
+    /** Refreshes both leaders' positions and velocities in a single batched CAN read */
+    private void refreshOdometrySignals() {
+        BaseStatusSignal.refreshAll(odometrySignals);
+        leftTimestamp = leftPosition.getTimestamp().getTime();
+        rightTimestamp = rightPosition.getTimestamp().getTime();
+    }
+
+    /** Returns how far each side has driven, from the last refresh moved forward to now by each side's velocity */
+    public DifferentialDriveWheelPositions getWheelPositions() {
+        return new DifferentialDriveWheelPositions(
+            BaseStatusSignal.getLatencyCompensatedValue(leftPosition, leftVelocity) * Constants.TankConstants.WheelCircumference,
+            BaseStatusSignal.getLatencyCompensatedValue(rightPosition, rightVelocity) * Constants.TankConstants.WheelCircumference);
+    }
+
+    public ChassisSpeeds getRobotRelativeSpeeds() {
+        return Constants.TankConstants.TankKinematics.toChassisSpeeds(new DifferentialDriveWheelSpeeds(
+            leftVelocity.getValueAsDouble() * Constants.TankConstants.WheelCircumference,
+            rightVelocity.getValueAsDouble() * Constants.TankConstants.WheelCircumference));
+    }
+
+    /**
+     * Drives both sides at closed-loop wheel velocities, used by the path follower
+     * @param speeds The ChassisSpeeds to drive at, the sideways component is ignored
+     */
+    public void driveRobotRelative(ChassisSpeeds speeds) {
+        DifferentialDriveWheelSpeeds wheelSpeeds = Constants.TankConstants.TankKinematics.toWheelSpeeds(speeds);
+        wheelSpeeds.desaturate(Constants.TankConstants.MaxSpeedMetersPerSecond);
+
+        frontLeft.setControl(velocityRequest.withVelocity(wheelSpeeds.leftMetersPerSecond / Constants.TankConstants.WheelCircumference));
+        frontRight.setControl(velocityRequest.withVelocity(wheelSpeeds.rightMetersPerSecond / Constants.TankConstants.WheelCircumference));
+        TankDrive.feed();
+    }
+
+    /**
+    * Pathfinds to a pose around the field's obstacles, the target is read when the command starts
+    * @param targetPose The pose to end at
+    * @return The pathfinding command
+    */
+    public Command pathfindToPoseCommand(Supplier<Pose2d> targetPose) {
+        return new DeferredCommand(() -> AutoBuilder.pathfindToPose(
+                targetPose.get(),
+                Constants.TankConstants.PathfindingConstraints,
+                0.0,
+                Constants.AutonomousConstants.PathfindingRotationDelayDistance),
+            Set.of(this));
+    }
+
+    /** Returns the robot's pose from the pose estimator, the one pose everything should drive and aim from */
+    public Pose2d getPose() {
+        return PoseEstimator.getInstance().getPosition();
+    }
+
+    /** Resets the robot's pose, the estimate and the wheel odometry together */
+    public void resetPose(Pose2d pose) {
+        PoseEstimator.getInstance().resetPoseEstimate(pose);
+    }
+
+    /** Returns the pose from wheel odometry alone, only for comparing against the estimate */
+    @Override
+    public Pose2d getOdometryPose() {
+        return tankOdometry.getPoseMeters();
+    }
+
+    /** Returns whether the gyro or either side's leader stopped sending fresh data */
+    public boolean isDrivetrainDataStale() {
+        return gyroStale.getAsBoolean() || leftStale.getAsBoolean() || rightStale.getAsBoolean();
+    }
+
+    @Override
+    public edu.wpi.first.math.estimator.PoseEstimator<DifferentialDriveWheelPositions> createPoseEstimator(Pose2d initialPose, Vector<N3> stateStdDevs, Vector<N3> visionStdDevs) {
+        return new DifferentialDrivePoseEstimator(
+            Constants.TankConstants.TankKinematics,
+            latestYaw,
+            latestWheelPositions.leftMeters,
+            latestWheelPositions.rightMeters,
+            initialPose,
+            stateStdDevs,
+            visionStdDevs);
+    }
+
+    @Override
+    public void updatePoseEstimator(edu.wpi.first.math.estimator.PoseEstimator<DifferentialDriveWheelPositions> estimator) {
+        if (!latestSampleStale) {
+            estimator.update(latestYaw, latestWheelPositions);
+        }
+    }
+
+    @Override
+    public void resetPoseEstimator(edu.wpi.first.math.estimator.PoseEstimator<DifferentialDriveWheelPositions> estimator, Pose2d pose) {
+        DifferentialDriveWheelPositions positions = getWheelPositions();
+        tankOdometry.resetPosition(gyro.getYaw(), positions.leftMeters, positions.rightMeters, pose);
+        estimator.resetPosition(gyro.getYaw(), positions, pose);
+    }
+
+    @Override
+    public void periodic() {
+        long periodicStart = RobotLogger.now();
+
+        // Sample both sides and the gyro once, PoseEstimator runs after this and updates from the same sample
+        refreshOdometrySignals();
+        latestYaw = gyro.getYaw();
+        latestWheelPositions = getWheelPositions();
+
+        // Hold the last good odometry while data is stale, the wheel distance is picked back up once it recovers
+        latestSampleStale = isDrivetrainDataStale();
+        if (!latestSampleStale) {
+            tankOdometry.update(latestYaw, latestWheelPositions.leftMeters, latestWheelPositions.rightMeters);
+        }
+
+        RobotLogger.getInstance().logTiming("Tank", periodicStart);
     }
 
     public void setRightInverted() {
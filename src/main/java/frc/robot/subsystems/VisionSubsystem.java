@@ -16,6 +16,7 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.utilities.LimelightHelpers;
 import frc.robot.utilities.PoseEstimator;
+import frc.robot.utilities.RobotLogger;
 import frc.robot.utilities.LimelightHelpers.LimelightTarget_Fiducial;
 import frc.robot.utilities.constants.Constants;
 
@@ -32,6 +33,13 @@ public class VisionSubsystem extends SubsystemBase {
   private boolean NNLimelightConnected = false;
 
   private double photonTimestamp;
+  private double visionTimestamp;
+  private double lastLimelightPublishTimestamp = Double.NaN; // The Limelight's own time for its last frame, a new value means a new frame
+
+  // Quality of the latest pose, used to work out how much to trust it
+  private int visionTagCount;
+  private double visionAverageTagDistance;
+  private double visionAmbiguity;
   private PhotonCamera photonCam_1;
   private boolean photon1HasTargets;
   private AprilTagFieldLayout aprilTagFieldLayout;
@@ -67,7 +75,11 @@ public class VisionSubsystem extends SubsystemBase {
     noteRobotRelativePose = new Pose2d();
     targetRobotRelativePose = new Pose2d();
     photonTimestamp = 0.0;
+    visionTimestamp = 0.0;
     limeLatency = 0.0;
+    visionTagCount = 0;
+    visionAverageTagDistance = 0.0;
+    visionAmbiguity = 0.0;
 
     // Changes vision mode between limelight and photonvision for easy switching
     if (Constants.VisionConstants.IS_LIMELIGHT_MODE) {
@@ -112,6 +124,8 @@ public class VisionSubsystem extends SubsystemBase {
 
 @Override
   public void periodic() {
+    long periodicStart = RobotLogger.now();
+
     /*Ensures empty json not fed to pipeline*/
     apriltagLimelightConnected =
         !NetworkTableInstance.getDefault()
@@ -132,12 +146,27 @@ public class VisionSubsystem extends SubsystemBase {
 
       estimatePose = LimelightHelpers.getBotPose2d_wpiBlue(Constants.VisionConstants.POSE_LIMELIGHT);
 
-      if (visionAccurate(estimatePose)) {
+      // Only a new frame gets a capture time, recomputing it from the current time every loop would make the same frame look new
+      double publishTimestamp = jsonResults.targetingResults.timestamp_LIMELIGHT_publish;
+      boolean newFrame = publishTimestamp != lastLimelightPublishTimestamp;
+      lastLimelightPublishTimestamp = publishTimestamp;
+
+      if (newFrame && visionAccurate(estimatePose)) {
         // Blue alliance means origin is bottom right of the field 
         limeLatency =
             LimelightHelpers.getLatency_Pipeline(Constants.VisionConstants.POSE_LIMELIGHT)
                 + LimelightHelpers.getLatency_Capture(Constants.VisionConstants.POSE_LIMELIGHT);
         botPose = estimatePose;
+        visionTimestamp = getTimestampSeconds(limeLatency);
+
+        LimelightTarget_Fiducial[] tags = jsonResults.targetingResults.targets_Fiducials;
+        visionTagCount = tags.length;
+        double totalDistance = 0.0;
+        for (LimelightTarget_Fiducial tag : tags) {
+          totalDistance += tag.getTargetPose_CameraSpace().getTranslation().getNorm();
+        }
+        visionAverageTagDistance = (tags.length > 0) ? totalDistance / tags.length : 0.0;
+        visionAmbiguity = 0.0; // Limelight doesn't report ambiguity, its MegaTag solve picks the pose itself
       }
     }
 
@@ -155,6 +184,15 @@ public class VisionSubsystem extends SubsystemBase {
         Transform3d fieldToCamera = result_1.getMultiTagResult().estimatedPose.best;
         Transform3d fieldCamToRobot = fieldToCamera.plus(Constants.VisionConstants.PHOTON_1_CAM_TO_ROBOT);
         botPose = new Pose2d(fieldCamToRobot.getX(), fieldCamToRobot.getY(), new Rotation2d(fieldCamToRobot.getRotation().getZ()));
+        visionTimestamp = photonTimestamp;
+
+        visionTagCount = result_1.getMultiTagResult().fiducialIDsUsed.size();
+        double totalDistance = 0.0;
+        for (PhotonTrackedTarget target : result_1.getTargets()) {
+          totalDistance += target.getBestCameraToTarget().getTranslation().getNorm();
+        }
+        visionAverageTagDistance = result_1.getTargets().isEmpty() ? 0.0 : totalDistance / result_1.getTargets().size();
+        visionAmbiguity = 0.0; // A multi-tag solve has no ambiguity
       }
       else if (photon1HasTargets) {
         PhotonTrackedTarget target = result_1.getBestTarget();
@@ -165,6 +203,11 @@ public class VisionSubsystem extends SubsystemBase {
           Pose3d tagPose = aprilTagFieldLayout.getTagPose(target.getFiducialId()).get();
           Pose3d currentPose3d = PhotonUtils.estimateFieldToRobotAprilTag(bestCameraToTarget, tagPose, Constants.VisionConstants.PHOTON_1_CAM_TO_ROBOT);
           botPose = currentPose3d.toPose2d();
+          visionTimestamp = photonTimestamp;
+
+          visionTagCount = 1;
+          visionAverageTagDistance = bestCameraToTarget.getTranslation().getNorm();
+          visionAmbiguity = target.getPoseAmbiguity();
         }
       }
       else{
@@ -203,6 +246,7 @@ public class VisionSubsystem extends SubsystemBase {
       }
     }
 
+    RobotLogger.getInstance().logTiming("Vision", periodicStart);
   }
 
   /**
@@ -227,6 +271,34 @@ public class VisionSubsystem extends SubsystemBase {
     return photonTimestamp;
   }
 
+  /**
+   * @return Timestamp of the latest vision pose from either limelight or photonvision
+   */
+  public double getVisionTimestamp() {
+    return visionTimestamp;
+  }
+
+  /**
+   * @return how many apriltags the latest vision pose was solved from
+   */
+  public int getVisionTagCount() {
+    return visionTagCount;
+  }
+
+  /**
+   * @return the average distance in meters from the camera to the tags in the latest vision pose
+   */
+  public double getVisionAverageTagDistance() {
+    return visionAverageTagDistance;
+  }
+
+  /**
+   * @return the pose ambiguity of the latest vision pose, 0 when it was solved from multiple tags
+   */
+  public double getVisionAmbiguity() {
+    return visionAmbiguity;
+  }
+
   /**
    * @return boolean if photonvision has targets
    */
@@ -393,7 +465,7 @@ public class VisionSubsystem extends SubsystemBase {
    * @return a follow path command to drive to the note
    */
   public Command onTheFlyToNoteCommand(){
-    return new SwerveSubsystem().onTheFlyPathCommand(this::getNotePose2d); //doing this::getNotePose2d converts to a supplier
+    return SwerveSubsystem.getInstance().onTheFlyPathCommand(this::getNotePose2d); //doing this::getNotePose2d converts to a supplier
   }
 
   /**
@@ -401,7 +473,7 @@ public class VisionSubsystem extends SubsystemBase {
    * @return a PID command to drive in front of a note
    */
   public Command PID_thenOnTheFlyToNoteCommand(){
-    return new SwerveSubsystem().chaseThenOnTheFlyCommand(this::getNotePose2d);
+    return SwerveSubsystem.getInstance().chaseThenOnTheFlyCommand(this::getNotePose2d);
   }
 
   /**
@@ -409,7 +481,7 @@ public class VisionSubsystem extends SubsystemBase {
    * @return a PID and then on-the-fly command to drive onto a note
    */
   public Command PIDtoNoteCommand(){
-    return new SwerveSubsystem().chasePoseCommand(this::getNotePose2d);
+    return SwerveSubsystem.getInstance().chasePoseCommand(this::getNotePose2d);
   }
 
   /**
@@ -417,6 +489,6 @@ public class VisionSubsystem extends SubsystemBase {
    * @return a PID command to drive onto a note robot relative
    */
   public Command PIDtoNoteRobotRelativeCommand(){
-    return new SwerveSubsystem().chasePoseRobotRelativeCommand(this::getRobotRelativeNotePose2d);
+    return SwerveSubsystem.getInstance().chasePoseRobotRelativeCommand(this::getRobotRelativeNotePose2d);
   }
 }
\ No newline at end of file
@@ -0,0 +1,449 @@
+package frc.robot.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pathplanner.lib.path.ConstraintsZone;
+import com.pathplanner.lib.path.PathConstraints;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+
+import frc.robot.utilities.DrivetrainLimits;
+import frc.robot.utilities.FlowField;
+import frc.robot.utilities.VelocityProfiler;
+import frc.robot.utilities.constants.Constants;
+import frc.robot.utilities.constants.FieldConstants;
+
+/**
+ * Offline tool that searches which staged notes to pick up, in what order, from which approach angle and from
+ * where to shoot each one, to minimize the total autonomous time. Every candidate leg is a cubic bezier checked
+ * against the navgrid, and the search runs in parallel with fork/join. The best route is written as PathPlanner
+ * .path files and an .auto for the blue alliance (AutoBuilder flips it for red).
+ *
+ * <p>Run with {@code ./gradlew optimizeAutoRoutes}, optionally with {@code -PnoteCount=4}.
+ */
+public class AutoRouteOptimizer {
+    private static final String pathPrefix = "Optimized";
+    private static final String folder = "Optimized";
+
+    /* Where the robot may shoot from (blue alliance), the preload is always shot from the first one */
+    private static final Translation2d[] shootingPositions = {
+        new Translation2d(1.36, 5.55), // Subwoofer center, matches the hand-written autos
+        new Translation2d(0.95, 6.75), // Subwoofer amp side
+        new Translation2d(0.95, 4.35), // Subwoofer source side
+        new Translation2d(2.60, 4.30) // In front of the podium
+    };
+
+    /* Approach angles tried at every note, relative to driving straight at it from the speaker */
+    private static final double[] approachOffsetsDegrees = {-60, -30, 0, 30, 60};
+
+    private static final double intakeSeconds = 0.25; // Time spent driving over a note to pick it up
+    private static final double shotSeconds = 0.5; // Time to spin up and fire from a shooting position
+    private static final double autoSeconds = 15.0;
+    private static final int bezierSamples = 40; // Points each leg is sampled at to check it against the navgrid
+    private static final int sequentialDepth = 2; // Below this many notes left, a task searches on its own instead of forking
+
+    /** A candidate leg between two poses, direction angles are the direction of travel at each end */
+    private static class Leg {
+        private final Translation2d start;
+        private final Translation2d end;
+        private final Rotation2d startDirection;
+        private final Rotation2d endDirection;
+        private final Rotation2d endHeading;
+        private VelocityProfiler.Profile profile;
+        private final double seconds;
+
+        private Leg(Translation2d start, Rotation2d startDirection, Translation2d end, Rotation2d endDirection, Rotation2d startHeading, Rotation2d endHeading) {
+            this.start = start;
+            this.end = end;
+            this.startDirection = startDirection;
+            this.endDirection = endDirection;
+            this.endHeading = endHeading;
+            this.seconds = evaluate(startHeading);
+        }
+
+        private double controlLength() {
+            return start.getDistance(end) / 3.0;
+        }
+
+        private Translation2d startControl() {
+            return start.plus(new Translation2d(controlLength(), startDirection));
+        }
+
+        private Translation2d endControl() {
+            return end.minus(new Translation2d(controlLength(), endDirection));
+        }
+
+        private Translation2d sample(double t) {
+            Translation2d p1 = startControl();
+            Translation2d p2 = endControl();
+            double u = 1.0 - t;
+            return start.times(u * u * u).plus(p1.times(3 * u * u * t)).plus(p2.times(3 * u * t * t)).plus(end.times(t * t * t));
+        }
+
+        private List<Translation2d> bezierPoints() {
+            return List.of(start, startControl(), endControl(), end);
+        }
+
+        /* Seconds to drive the leg, or infinity if it crosses an obstacle */
+        private double evaluate(Rotation2d startHeading) {
+            for (int i = 1; i <= bezierSamples; i++) {
+                if (navgrid.isBlocked(sample((double) i / bezierSamples))) {
+                    return Double.POSITIVE_INFINITY;
+                }
+            }
+
+            profile = profiler.profile(bezierPoints(), 0.0, 0.0);
+            double translationSeconds = profile.getTotalSeconds();
+            double rotationSeconds = FlowField.estimateTravelTimeSeconds(
+                Math.abs(endHeading.minus(startHeading).getRadians()), constraints.getMaxAngularVelocityRps(), constraints.getMaxAngularAccelerationRpsSq());
+
+            return Math.max(translationSeconds, rotationSeconds);
+        }
+    }
+
+    private static class Navgrid {
+        private final boolean[][] grid;
+        private final double nodeSize;
+
+        private Navgrid(File file) throws IOException {
+            JsonNode navgrid = new ObjectMapper().readTree(file);
+            JsonNode rows = navgrid.get("grid");
+
+            nodeSize = navgrid.get("nodeSizeMeters").asDouble();
+            grid = new boolean[rows.size()][rows.get(0).size()];
+
+            for (int row = 0; row < grid.length; row++) {
+                for (int column = 0; column < grid[row].length; column++) {
+                    grid[row][column] = rows.get(row).get(column).asBoolean();
+                }
+            }
+        }
+
+        private boolean isBlocked(Translation2d point) {
+            int row = (int) Math.floor(point.getY() / nodeSize);
+            int column = (int) Math.floor(point.getX() / nodeSize);
+            return row < 0 || row >= grid.length || column < 0 || column >= grid[row].length || grid[row][column];
+        }
+    }
+
+    /** An immutable chosen sequence of note visits, shared between tasks */
+    private static class Route {
+        private final Route previous;
+        private final int note;
+        private final int approach;
+        private final int shootingPosition;
+        private final double seconds;
+        private final int length;
+
+        private Route(Route previous, int note, int approach, int shootingPosition, double seconds) {
+            this.previous = previous;
+            this.note = note;
+            this.approach = approach;
+            this.shootingPosition = shootingPosition;
+            this.seconds = seconds;
+            this.length = (previous == null) ? 1 : previous.length + 1;
+        }
+
+        private boolean contains(int note) {
+            for (Route route = this; route != null; route = route.previous) {
+                if (route.note == note) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private List<Route> visits() {
+            List<Route> visits = new ArrayList<>();
+            for (Route route = this; route != null; route = route.previous) {
+                visits.add(0, route);
+            }
+
+            return visits;
+        }
+    }
+
+    private static Navgrid navgrid;
+    private static VelocityProfiler profiler;
+    private static PathConstraints constraints;
+    private static Translation2d[] notes;
+    private static Rotation2d[][] approachDirections; // [note][approach]
+    private static Leg[][][] pickupLegs; // [shooting position][note][approach]
+    private static Leg[][][] returnLegs; // [note][approach][shooting position]
+
+    /** Searches every way to extend a route by the remaining notes, forking while there are enough notes left */
+    private static class SearchTask extends RecursiveTask<Route> {
+        private final Route route;
+        private final int remaining;
+
+        private SearchTask(Route route, int remaining) {
+            this.route = route;
+            this.remaining = remaining;
+        }
+
+        @Override
+        protected Route compute() {
+            if (remaining == 0) {
+                return route;
+            }
+
+            int from = (route == null) ? 0 : route.shootingPosition;
+            double elapsed = (route == null) ? shotSeconds : route.seconds;
+
+            List<SearchTask> forks = new ArrayList<>();
+            Route best = null;
+
+            for (int note = 0; note < notes.length; note++) {
+                if (route != null && route.contains(note)) {
+                    continue;
+                }
+
+                for (int approach = 0; approach < approachOffsetsDegrees.length; approach++) {
+                    double pickupSeconds = pickupLegs[from][note][approach].seconds;
+                    if (Double.isInfinite(pickupSeconds)) {
+                        continue;
+                    }
+
+                    for (int shootingPosition = 0; shootingPosition < shootingPositions.length; shootingPosition++) {
+                        double seconds = elapsed + pickupSeconds + intakeSeconds + returnLegs[note][approach][shootingPosition].seconds + shotSeconds;
+                        if (Double.isInfinite(seconds)) {
+                            continue;
+                        }
+
+                        Route next = new Route(route, note, approach, shootingPosition, seconds);
+                        SearchTask task = new SearchTask(next, remaining - 1);
+
+                        if (remaining > sequentialDepth) {
+                            task.fork();
+                            forks.add(task);
+                        } else {
+                            best = better(best, task.compute());
+                        }
+                    }
+                }
+            }
+
+            for (SearchTask task : forks) {
+                best = better(best, task.join());
+            }
+
+            return best;
+        }
+    }
+
+    private static Route better(Route a, Route b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return (b.seconds < a.seconds) ? b : a;
+    }
+
+    /* The robot faces the speaker when shooting */
+    private static Rotation2d shootingHeading(Translation2d position) {
+        Translation2d toSpeaker = FieldConstants.Coordinates.BLUE_SPEAKER.getTranslation().minus(position);
+        return toSpeaker.getAngle().minus(Constants.HeadingConstants.shooterHeadingOffset);
+    }
+
+    private static void buildLegs() {
+        List<Translation2d> noteList = new ArrayList<>();
+        for (Translation2d spike : FieldConstants.StagingLocations.spikeTranslations) noteList.add(spike);
+        for (Translation2d centerline : FieldConstants.StagingLocations.centerlineTranslations) noteList.add(centerline);
+        notes = noteList.toArray(new Translation2d[0]);
+
+        approachDirections = new Rotation2d[notes.length][approachOffsetsDegrees.length];
+        for (int note = 0; note < notes.length; note++) {
+            Rotation2d direct = notes[note].minus(shootingPositions[0]).getAngle();
+            for (int approach = 0; approach < approachOffsetsDegrees.length; approach++) {
+                approachDirections[note][approach] = direct.plus(Rotation2d.fromDegrees(approachOffsetsDegrees[approach]));
+            }
+        }
+
+        pickupLegs = new Leg[shootingPositions.length][notes.length][approachOffsetsDegrees.length];
+        returnLegs = new Leg[notes.length][approachOffsetsDegrees.length][shootingPositions.length];
+
+        for (int shootingPosition = 0; shootingPosition < shootingPositions.length; shootingPosition++) {
+            Translation2d shooting = shootingPositions[shootingPosition];
+            Rotation2d heading = shootingHeading(shooting);
+
+            for (int note = 0; note < notes.length; note++) {
+                for (int approach = 0; approach < approachOffsetsDegrees.length; approach++) {
+                    Rotation2d direction = approachDirections[note][approach];
+                    Rotation2d away = direction.plus(Rotation2d.fromDegrees(180));
+
+                    // Drive onto the note along the approach direction facing it, then back out the way the robot came
+                    pickupLegs[shootingPosition][note][approach] = new Leg(
+                        shooting, notes[note].minus(shooting).getAngle(), notes[note], direction, heading, direction);
+                    returnLegs[note][approach][shootingPosition] = new Leg(
+                        notes[note], away, shooting, shooting.minus(notes[note]).getAngle(), direction, heading);
+                }
+            }
+        }
+    }
+
+    private static ObjectNode point(ObjectMapper mapper, Translation2d point) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("x", point.getX());
+        node.put("y", point.getY());
+        return node;
+    }
+
+    private static ObjectNode pathJson(ObjectMapper mapper, Leg leg) {
+        ObjectNode path = mapper.createObjectNode();
+        path.put("version", 1.0);
+
+        ArrayNode waypoints = path.putArray("waypoints");
+        ObjectNode start = waypoints.addObject();
+        start.set("anchor", point(mapper, leg.start));
+        start.putNull("prevControl");
+        start.set("nextControl", point(mapper, leg.startControl()));
+        start.put("isLocked", false);
+        start.putNull("linkedName");
+
+        ObjectNode end = waypoints.addObject();
+        end.set("anchor", point(mapper, leg.end));
+        end.set("prevControl", point(mapper, leg.endControl()));
+        end.putNull("nextControl");
+        end.put("isLocked", false);
+        end.putNull("linkedName");
+
+        path.putArray("rotationTargets");
+
+        // The same zones VelocityProfiler gives paths built on the robot, so PathPlanner follows the profile the leg was timed with
+        ArrayNode constraintZones = path.putArray("constraintZones");
+        int zoneIndex = 1;
+        for (ConstraintsZone zone : profiler.getConstraintZones(leg.profile)) {
+            ObjectNode zoneNode = constraintZones.addObject();
+            zoneNode.put("name", "Profile " + zoneIndex++);
+            zoneNode.put("minWaypointRelativePos", zone.getMinWaypointPos());
+            zoneNode.put("maxWaypointRelativePos", zone.getMaxWaypointPos());
+            zoneNode.set("constraints", constraintsJson(mapper, zone.getConstraints()));
+        }
+
+        path.putArray("eventMarkers");
+        path.set("globalConstraints", constraintsJson(mapper, constraints));
+
+        ObjectNode goalEndState = path.putObject("goalEndState");
+        goalEndState.put("velocity", 0);
+        goalEndState.put("rotation", leg.endHeading.getDegrees());
+        goalEndState.put("rotateFast", false);
+
+        path.put("reversed", false);
+        path.put("folder", folder);
+
+        ObjectNode previewStartingState = path.putObject("previewStartingState");
+        previewStartingState.put("rotation", 0);
+        previewStartingState.put("velocity", 0);
+
+        path.put("useDefaultConstraints", false);
+        return path;
+    }
+
+    /* PathPlanner's files store angular constraints in degrees */
+    private static ObjectNode constraintsJson(ObjectMapper mapper, PathConstraints pathConstraints) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("maxVelocity", pathConstraints.getMaxVelocityMps());
+        node.put("maxAcceleration", pathConstraints.getMaxAccelerationMpsSq());
+        node.put("maxAngularVelocity", Math.toDegrees(pathConstraints.getMaxAngularVelocityRps()));
+        node.put("maxAngularAcceleration", Math.toDegrees(pathConstraints.getMaxAngularAccelerationRpsSq()));
+        return node;
+    }
+
+    private static void addCommand(ArrayNode commands, String type, String key, String value) {
+        ObjectNode command = commands.addObject();
+        command.put("type", type);
+        command.putObject("data").put(key, value);
+    }
+
+    private static void write(Route best, File pathplannerDirectory) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+        ObjectNode auto = mapper.createObjectNode();
+        auto.put("version", 1.0);
+
+        ObjectNode startingPose = auto.putObject("startingPose");
+        startingPose.set("position", point(mapper, shootingPositions[0]));
+        startingPose.put("rotation", shootingHeading(shootingPositions[0]).getDegrees());
+
+        ObjectNode sequence = auto.putObject("command");
+        sequence.put("type", "sequential");
+        ArrayNode commands = sequence.putObject("data").putArray("commands");
+        addCommand(commands, "named", "name", "Speaker Shooter");
+
+        int from = 0;
+        int index = 1;
+        for (Route visit : best.visits()) {
+            String pickupName = pathPrefix + "Note" + index + "Pickup";
+            String returnName = pathPrefix + "Note" + index + "Return";
+
+            mapper.writeValue(new File(pathplannerDirectory, "paths/" + pickupName + ".path"), pathJson(mapper, pickupLegs[from][visit.note][visit.approach]));
+            mapper.writeValue(new File(pathplannerDirectory, "paths/" + returnName + ".path"), pathJson(mapper, returnLegs[visit.note][visit.approach][visit.shootingPosition]));
+
+            // Run the intake for as long as it takes to drive onto the note
+            ObjectNode pickup = commands.addObject();
+            pickup.put("type", "deadline");
+            ArrayNode pickupCommands = pickup.putObject("data").putArray("commands");
+            addCommand(pickupCommands, "path", "pathName", pickupName);
+            addCommand(pickupCommands, "named", "name", "Intake Note");
+
+            addCommand(commands, "path", "pathName", returnName);
+            addCommand(commands, "named", "name", "Speaker Shooter");
+
+            System.out.println(String.format(Locale.ROOT, "  Note %d: (%.2f, %.2f) approached at %.0f degrees, shot from (%.2f, %.2f)",
+                index, notes[visit.note].getX(), notes[visit.note].getY(), approachDirections[visit.note][visit.approach].getDegrees(),
+                shootingPositions[visit.shootingPosition].getX(), shootingPositions[visit.shootingPosition].getY()));
+
+            from = visit.shootingPosition;
+            index++;
+        }
+
+        auto.put("folder", folder);
+        auto.put("choreoAuto", false);
+        mapper.writeValue(new File(pathplannerDirectory, "autos/" + pathPrefix + "Auto.auto"), auto);
+    }
+
+    /**
+    * @param args The deploy/pathplanner directory to read the navgrid from and write to, and optionally how many notes to collect after the preload (default 3).
+    */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: AutoRouteOptimizer <deploy/pathplanner directory> [note count]");
+            System.exit(1);
+        }
+
+        File pathplannerDirectory = new File(args[0]);
+        int noteCount = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+
+        navgrid = new Navgrid(new File(pathplannerDirectory, "navgrid.json"));
+        profiler = new VelocityProfiler(DrivetrainLimits.getInstance());
+        constraints = profiler.getGlobalConstraints();
+        buildLegs();
+
+        long startTime = System.nanoTime();
+        Route best = ForkJoinPool.commonPool().invoke(new SearchTask(null, noteCount));
+        double searchSeconds = (System.nanoTime() - startTime) / 1e9;
+
+        if (best == null) {
+            System.err.println("No route collects " + noteCount + " notes without crossing an obstacle");
+            System.exit(1);
+        }
+
+        System.out.println(String.format(Locale.ROOT, "Best %d note route takes %.2f s of the %.0f s auto (searched in %.2f s):", noteCount, best.seconds, autoSeconds, searchSeconds));
+        write(best, pathplannerDirectory);
+
+        if (best.seconds > autoSeconds) {
+            System.out.println("Warning: the route doesn't fit in the autonomous period, try fewer notes");
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package frc.robot.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import edu.wpi.first.wpilibj.TimedRobot;
+
+/**
+ * Offline tool that mines the robot's .wpilog files (see {@link frc.robot.utilities.RobotLogger}) for loop overruns,
+ * how long each subsystem takes, vision latency, CAN devices going stale and how closely paths were followed. Each
+ * log is read through a memory-mapped {@link DataLogReader} one record at a time and only running statistics are
+ * kept, so a log is never loaded whole. Logs are analyzed in parallel, a summary report is written next to each
+ * one and a table of every match is printed.
+ *
+ * <p>Run with {@code ./gradlew analyzeLogs -Plogs=<log file or directory>}.
+ */
+public class LogAnalyzer {
+    private static final double loopPeriodMilliseconds = TimedRobot.kDefaultPeriod * 1000.0;
+    private static final double overrunToleranceMilliseconds = 1.0; // Scheduling jitter that isn't counted as an overrun
+    private static final long maxTargetAgeMicroseconds = 40_000; // A path target older than this isn't compared against the estimate
+    private static final String[] matchTypes = {"None", "Practice", "Qualification", "Elimination"};
+
+    /** Count, mean, extremes and percentiles of a value, in fixed bins so memory doesn't grow with the log */
+    private static class Distribution {
+        private final double binWidth;
+        private final long[] bins;
+        private long count = 0;
+        private double sum = 0.0;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private Distribution(double binWidth, double range) {
+            this.binWidth = binWidth;
+            this.bins = new long[(int) Math.ceil(range / binWidth) + 1]; // The last bin collects everything past the range
+        }
+
+        private void add(double value) {
+            if (!Double.isFinite(value)) {
+                return;
+            }
+
+            int bin = (int) Math.min(Math.max(value, 0.0) / binWidth, bins.length - 1);
+            bins[bin]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        private double percentile(double fraction) {
+            if (count == 0) {
+                return 0.0;
+            }
+
+            long target = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int bin = 0; bin < bins.length; bin++) {
+                seen += bins[bin];
+                if (seen >= target) {
+                    return Math.min((bin + 0.5) * binWidth, max);
+                }
+            }
+
+            return max;
+        }
+
+        private String format(String unit) {
+            if (count == 0) {
+                return "no samples";
+            }
+
+            return String.format(Locale.ROOT, "n=%d mean=%.2f%s p50=%.2f%s p95=%.2f%s p99=%.2f%s max=%.2f%s",
+                count, sum / count, unit, percentile(0.5), unit, percentile(0.95), unit, percentile(0.99), unit, max, unit);
+        }
+    }
+
+    /** How long and how often a CAN device was stale */
+    private static class Staleness {
+        private double staleSeconds = 0.0;
+        private int events = 0;
+        private long staleSince = -1;
+
+        private void update(boolean stale, long timestamp) {
+            if (stale && staleSince < 0) {
+                staleSince = timestamp;
+                events++;
+            } else if (!stale && staleSince >= 0) {
+                staleSeconds += (timestamp - staleSince) / 1e6;
+                staleSince = -1;
+            }
+        }
+    }
+
+    /** Everything gathered from one log */
+    private static class MatchSummary {
+        private final File file;
+        private String event = "";
+        private String matchType = "";
+        private long matchNumber = 0;
+        private String error = null;
+
+        private boolean enabled = false;
+        private long enabledSince = 0;
+        private double enabledSeconds = 0.0;
+        private long lastTimestamp = 0;
+
+        private final Distribution loopPeriod = new Distribution(0.1, 200.0);
+        private long overruns = 0;
+        private final Distribution loggerTime = new Distribution(0.01, 10.0);
+        private final Map<String, Distribution> timings = new TreeMap<>();
+
+        private final Distribution visionLatency = new Distribution(1.0, 500.0);
+        private long visionObservations = 0;
+        private long visionAccepted = 0;
+
+        private final Map<String, Staleness> staleness = new TreeMap<>();
+
+        private Pose2d targetPose = null;
+        private long targetTimestamp = 0;
+        private final Distribution pathError = new Distribution(0.005, 5.0);
+
+        private MatchSummary(File file) {
+            this.file = file;
+        }
+
+        private String getName() {
+            if (matchNumber <= 0) {
+                return file.getName();
+            }
+
+            return String.format(Locale.ROOT, "%s %s %d", event, matchType, matchNumber).trim();
+        }
+
+        private int getStaleEvents() {
+            return staleness.values().stream().mapToInt(device -> device.events).sum();
+        }
+
+        private double getOverrunPercent() {
+            return (loopPeriod.count == 0) ? 0.0 : 100.0 * overruns / loopPeriod.count;
+        }
+    }
+
+    private static MatchSummary analyze(File file) {
+        MatchSummary summary = new MatchSummary(file);
+
+        try {
+            DataLogReader reader = new DataLogReader(file.getPath());
+            if (!reader.isValid()) {
+                summary.error = "not a valid wpilog";
+                return summary;
+            }
+
+            Map<Integer, Consumer<DataLogRecord>> handlers = new HashMap<>();
+            for (DataLogRecord record : reader) {
+                if (record.isStart()) {
+                    DataLogRecord.StartRecordData start = record.getStartData();
+                    Consumer<DataLogRecord> handler = createHandler(summary, start.name, start.type);
+                    if (handler != null) {
+                        handlers.put(start.entry, handler);
+                    }
+                } else if (record.isFinish()) {
+                    handlers.remove(record.getFinishEntry());
+                } else if (!record.isControl()) {
+                    Consumer<DataLogRecord> handler = handlers.get(record.getEntry());
+                    if (handler != null) {
+                        handler.accept(record);
+                    }
+                    summary.lastTimestamp = Math.max(summary.lastTimestamp, record.getTimestamp());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            summary.error = e.getMessage();
+            return summary;
+        }
+
+        // Close whatever was still open when the log ended
+        if (summary.enabled) {
+            summary.enabledSeconds += (summary.lastTimestamp - summary.enabledSince) / 1e6;
+        }
+        for (Staleness device : summary.staleness.values()) {
+            device.update(false, summary.lastTimestamp);
+        }
+
+        return summary;
+    }
+
+    /* Picks what to do with an entry's records by its name, null for entries that aren't analyzed */
+    private static Consumer<DataLogRecord> createHandler(MatchSummary summary, String name, String type) {
+        switch (name) {
+            case "DS:enabled":
+                return record -> {
+                    boolean enabled = record.getBoolean();
+                    if (enabled && !summary.enabled) {
+                        summary.enabledSince = record.getTimestamp();
+                    } else if (!enabled && summary.enabled) {
+                        summary.enabledSeconds += (record.getTimestamp() - summary.enabledSince) / 1e6;
+                    }
+                    summary.enabled = enabled;
+                };
+            case "NT:/FMSInfo/EventName":
+                return record -> summary.event = record.getString();
+            case "NT:/FMSInfo/MatchNumber":
+                return record -> summary.matchNumber = type.equals("double") ? (long) record.getDouble() : record.getInteger();
+            case "NT:/FMSInfo/MatchType":
+                return record -> {
+                    int matchType = (int) (type.equals("double") ? record.getDouble() : record.getInteger());
+                    summary.matchType = (matchType >= 0 && matchType < matchTypes.length) ? matchTypes[matchType] : "";
+                };
+            case "Logger/LoopPeriodMilliseconds":
+                return record -> {
+                    if (!summary.enabled) {
+                        return;
+                    }
+
+                    double period = record.getDouble();
+                    summary.loopPeriod.add(period);
+                    if (period > loopPeriodMilliseconds + overrunToleranceMilliseconds) {
+                        summary.overruns++;
+                    }
+                };
+            case "Logger/LoopMilliseconds":
+                return record -> summary.loggerTime.add(record.getDouble());
+            case "Vision/LatencyMilliseconds":
+                return record -> summary.visionLatency.add(record.getDouble());
+            case "Vision/Accepted":
+                return record -> {
+                    summary.visionObservations++;
+                    if (record.getBoolean()) {
+                        summary.visionAccepted++;
+                    }
+                };
+            case "Path/TargetPose":
+                return record -> {
+                    summary.targetPose = unpackPose(record);
+                    summary.targetTimestamp = record.getTimestamp();
+                };
+            case "Pose/Estimate":
+                return record -> {
+                    if (summary.enabled && summary.targetPose != null && record.getTimestamp() - summary.targetTimestamp <= maxTargetAgeMicroseconds) {
+                        Pose2d estimate = unpackPose(record);
+                        summary.pathError.add(estimate.getTranslation().getDistance(summary.targetPose.getTranslation()));
+                    }
+                };
+            default:
+                break;
+        }
+
+        if (name.startsWith("Timing/")) {
+            Distribution timing = summary.timings.computeIfAbsent(name.substring("Timing/".length()), key -> new Distribution(0.01, 20.0));
+            return record -> timing.add(record.getDouble());
+        }
+
+        if (name.startsWith("CAN/Stale/")) {
+            Staleness device = summary.staleness.computeIfAbsent(name.substring("CAN/Stale/".length()), key -> new Staleness());
+            return record -> device.update(record.getBoolean(), record.getTimestamp());
+        }
+
+        return null;
+    }
+
+    private static Pose2d unpackPose(DataLogRecord record) {
+        return Pose2d.struct.unpack(ByteBuffer.wrap(record.getRaw()).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    private static void writeReport(MatchSummary summary, File report) throws IOException {
+        try (PrintWriter writer = new PrintWriter(report, StandardCharsets.UTF_8)) {
+            writer.println(summary.getName() + " (" + summary.file.getName() + ")");
+            writer.println(String.format(Locale.ROOT, "Enabled for %.1f s", summary.enabledSeconds));
+            writer.println();
+
+            writer.println("Loop (while enabled)");
+            writer.println("  Period: " + summary.loopPeriod.format(" ms"));
+            writer.println(String.format(Locale.ROOT, "  Overruns: %d (%.2f%% of loops over %.0f ms)", summary.overruns, summary.getOverrunPercent(), loopPeriodMilliseconds + overrunToleranceMilliseconds));
+            writer.println("  Logging: " + summary.loggerTime.format(" ms"));
+            writer.println();
+
+            writer.println("Timing");
+            for (Map.Entry<String, Distribution> timing : summary.timings.entrySet()) {
+                writer.println("  " + timing.getKey() + ": " + timing.getValue().format(" ms"));
+            }
+            writer.println();
+
+            writer.println("Vision");
+            writer.println("  Latency: " + summary.visionLatency.format(" ms"));
+            writer.println(String.format(Locale.ROOT, "  Accepted: %d of %d observations", summary.visionAccepted, summary.visionObservations));
+            writer.println();
+
+            writer.println("CAN staleness");
+            for (Map.Entry<String, Staleness> device : summary.staleness.entrySet()) {
+                if (device.getValue().events > 0) {
+                    writer.println(String.format(Locale.ROOT, "  %s: %d times, %.2f s total", device.getKey(), device.getValue().events, device.getValue().staleSeconds));
+                }
+            }
+            if (summary.getStaleEvents() == 0) {
+                writer.println("  No device went stale");
+            }
+            writer.println();
+
+            writer.println("Path tracking error");
+            writer.println("  " + summary.pathError.format(" m"));
+        }
+    }
+
+    private static void collectLogs(File file, List<File> logs) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    collectLogs(child, logs);
+                }
+            }
+        } else if (file.getName().endsWith(".wpilog")) {
+            logs.add(file);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: LogAnalyzer <log file or directory>...");
+            System.exit(1);
+        }
+
+        List<File> logs = new ArrayList<>();
+        for (String arg : args) {
+            collectLogs(new File(arg), logs);
+        }
+
+        if (logs.isEmpty()) {
+            System.err.println("No .wpilog files found");
+            System.exit(1);
+        }
+
+        long startTime = System.nanoTime();
+        List<MatchSummary> summaries = logs.parallelStream().map(log -> {
+            MatchSummary summary = analyze(log);
+            if (summary.error == null) {
+                try {
+                    writeReport(summary, new File(log.getParentFile(), log.getName().replace(".wpilog", "-summary.txt")));
+                } catch (IOException e) {
+                    summary.error = "couldn't write the report: " + e.getMessage();
+                }
+            }
+            return summary;
+        }).sorted(Comparator.comparing(summary -> summary.file.getName())).collect(Collectors.toList());
+        double analysisSeconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.println(String.format(Locale.ROOT, "%-40s %9s %8s %9s %12s %12s %9s %6s %12s",
+            "Match", "Enabled", "Loops", "Overruns", "Loop p99", "Vision p50", "Accepted", "Stale", "Path p95"));
+
+        for (MatchSummary summary : summaries) {
+            if (summary.error != null) {
+                System.out.println(String.format(Locale.ROOT, "%-40s failed: %s", summary.getName(), summary.error));
+                continue;
+            }
+
+            System.out.println(String.format(Locale.ROOT, "%-40s %8.1fs %8d %8.2f%% %10.2fms %10.1fms %8.0f%% %6d %11.3fm",
+                summary.getName(),
+                summary.enabledSeconds,
+                summary.loopPeriod.count,
+                summary.getOverrunPercent(),
+                summary.loopPeriod.percentile(0.99),
+                summary.visionLatency.percentile(0.5),
+                (summary.visionObservations == 0) ? 0.0 : 100.0 * summary.visionAccepted / summary.visionObservations,
+                summary.getStaleEvents(),
+                summary.pathError.percentile(0.95)));
+        }
+
+        System.out.println(String.format(Locale.ROOT, "Analyzed %d logs in %.2f s, a report is next to each one", logs.size(), analysisSeconds));
+    }
+}
@@ -0,0 +1,161 @@
+package frc.robot.utilities;
+
+import static frc.robot.utilities.BlackBoxRecorder.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Turns a black box file written by {@link BlackBoxRecorder} back into readable rows. Frames are ordered by their
+ * sequence numbers rather than their slots, and any frame whose checksum doesn't match (torn by a crash while it
+ * was being written) is left out.
+ */
+public class BlackBoxDecoder {
+    private static final String[] modeNames = {"Disabled", "Autonomous", "Teleop", "Test"};
+
+    private BlackBoxDecoder() {}
+
+    /**
+    * Writes the final seconds of a black box file to a CSV.
+    *
+    * @param blackBox The black box file from the previous run.
+    * @param directory Where to put the CSV, created if it doesn't exist.
+    * @param seconds How many seconds before the last frame to include.
+    * @return The CSV written, or null if the file has no frames.
+    * @throws IOException If the black box can't be read or the CSV can't be written.
+    */
+    public static File dump(File blackBox, File directory, double seconds) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(blackBox.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < headerSize || buffer.getInt(magicOffset) != magic) {
+            throw new IOException(blackBox.getName() + " isn't a black box file");
+        }
+        if (buffer.getInt(versionOffset) != version || buffer.getInt(frameSizeOffset) != frameSize) {
+            throw new IOException(blackBox.getName() + " was written by a different black box version");
+        }
+
+        List<Integer> frames = readValidFrames(buffer);
+        if (frames.isEmpty()) {
+            return null;
+        }
+
+        double lastTimestamp = buffer.getDouble(frames.get(frames.size() - 1) + timestampOffset);
+        String[] outputNames = readOutputNames(buffer);
+
+        directory.mkdirs();
+        String startTime = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(buffer.getLong(startTimeOffset)));
+        File csv = new File(directory, "blackbox-" + startTime + ".csv");
+
+        try (PrintWriter writer = new PrintWriter(csv, StandardCharsets.US_ASCII)) {
+            writer.println(header(outputNames));
+
+            for (int offset : frames) {
+                if (buffer.getDouble(offset + timestampOffset) >= lastTimestamp - seconds) {
+                    writer.println(row(buffer, offset, outputNames.length));
+                }
+            }
+        }
+
+        return csv;
+    }
+
+    /* Offsets of the frames whose checksums match, oldest first */
+    private static List<Integer> readValidFrames(ByteBuffer buffer) {
+        int capacity = Math.min(buffer.getInt(capacityOffset), (buffer.capacity() - headerSize) / frameSize);
+        CRC32 checksum = new CRC32();
+        List<Integer> frames = new ArrayList<>();
+
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = headerSize + slot * frameSize;
+            long sequence = buffer.getLong(offset + sequenceOffset);
+
+            checksum.reset();
+            checksum.update(buffer.array(), offset, checksumOffset);
+            boolean intact = (int) checksum.getValue() == buffer.getInt(offset + checksumOffset);
+
+            // A cleared slot has a zero checksum that doesn't match its zero contents, so unwritten slots are skipped too
+            if (intact && sequence >= 0 && sequence % capacity == slot) {
+                frames.add(offset);
+            }
+        }
+
+        frames.sort(Comparator.comparingLong(offset -> buffer.getLong(offset + sequenceOffset)));
+        return frames;
+    }
+
+    private static String[] readOutputNames(ByteBuffer buffer) {
+        int count = Math.min(buffer.getInt(outputCountOffset), maxOutputs);
+        String[] names = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            int offset = outputNamesOffset + i * outputNameSize;
+            int length = 0;
+            while (length < outputNameSize && buffer.get(offset + length) != 0) {
+                length++;
+            }
+            names[i] = new String(buffer.array(), offset, length, StandardCharsets.US_ASCII);
+        }
+
+        return names;
+    }
+
+    private static String header(String[] outputNames) {
+        StringBuilder header = new StringBuilder("Sequence,Timestamp,X,Y,Heading");
+        for (String kind : new String[] {"Measured", "Desired"}) {
+            for (int module = 0; module < 4; module++) {
+                header.append(',').append(kind).append(module).append("Speed");
+                header.append(',').append(kind).append(module).append("Angle");
+            }
+        }
+        for (String name : outputNames) {
+            header.append(',').append(quote(name));
+        }
+
+        return header.append(",BatteryVoltage,Mode,BrownedOut,DSAttached,FMSAttached,ActiveCommands").toString();
+    }
+
+    private static String row(ByteBuffer buffer, int offset, int outputCount) {
+        StringBuilder row = new StringBuilder();
+        row.append(buffer.getLong(offset + sequenceOffset));
+        row.append(',').append(buffer.getDouble(offset + timestampOffset));
+
+        for (int i = 0; i < 3; i++) {
+            row.append(',').append(buffer.getFloat(offset + poseOffset + i * 4));
+        }
+        for (int i = 0; i < 16; i++) {
+            row.append(',').append(buffer.getFloat(offset + measuredStatesOffset + i * 4));
+        }
+        for (int i = 0; i < outputCount; i++) {
+            row.append(',').append(buffer.getFloat(offset + outputsOffset + i * 4));
+        }
+
+        row.append(',').append(buffer.getFloat(offset + batteryOffset));
+
+        int mode = buffer.get(offset + modeOffset);
+        row.append(',').append((mode >= 0 && mode < modeNames.length) ? modeNames[mode] : "Unknown");
+
+        int flags = buffer.get(offset + flagsOffset);
+        row.append(',').append((flags & brownoutFlag) != 0);
+        row.append(',').append((flags & dsAttachedFlag) != 0);
+        row.append(',').append((flags & fmsAttachedFlag) != 0);
+
+        int commandLength = Math.min(buffer.get(offset + commandLengthOffset) & 0xFF, maxCommandBytes);
+        row.append(',').append(quote(new String(buffer.array(), offset + commandsOffset, commandLength, StandardCharsets.US_ASCII)));
+
+        return row.toString();
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
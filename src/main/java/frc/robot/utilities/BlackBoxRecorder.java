@@ -0,0 +1,265 @@
+package frc.robot.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+import frc.robot.utilities.constants.Constants.BlackBoxConstants;
+
+/**
+ * Keeps the last few seconds of the robot's state in a memory-mapped file on the roboRIO, one fixed-size binary
+ * frame per loop: pose, measured and desired module states, mechanism outputs, battery voltage and the running
+ * commands. Writing a frame is a copy into mapped memory with no system calls, and the kernel owns those pages, so
+ * the frames survive the JVM crashing or being killed. Each frame carries a checksum of its contents, so one torn
+ * by a crash partway through writing it is skipped when decoding.
+ *
+ * <p>At startup the previous run's file is decoded by {@link BlackBoxDecoder} into a CSV of its final seconds,
+ * then the ring is cleared for this run.
+ */
+public class BlackBoxRecorder {
+    private static BlackBoxRecorder instance;
+
+    public static BlackBoxRecorder getInstance() {
+        if (instance == null) instance = new BlackBoxRecorder();
+        return instance;
+    }
+
+    /* File layout, shared with BlackBoxDecoder. Everything is little endian. */
+    static final int magic = 0x58424C42; // "BLBX"
+    static final int version = 1;
+    static final int headerSize = 512;
+    static final int frameSize = 256;
+    static final int maxOutputs = 8;
+    static final int outputNameSize = 32;
+    static final int maxCommandBytes = 120;
+
+    /* Header offsets */
+    static final int magicOffset = 0;
+    static final int versionOffset = 4;
+    static final int frameSizeOffset = 8;
+    static final int capacityOffset = 12;
+    static final int nextSequenceOffset = 16;
+    static final int startTimeOffset = 24; // Wall clock milliseconds when the run started
+    static final int outputCountOffset = 32;
+    static final int outputNamesOffset = 64;
+
+    /* Frame offsets */
+    static final int sequenceOffset = 0;
+    static final int timestampOffset = 8;
+    static final int poseOffset = 16; // x, y, heading radians as floats
+    static final int measuredStatesOffset = 28; // Speed, angle radians per module as floats
+    static final int desiredStatesOffset = 60;
+    static final int outputsOffset = 92; // maxOutputs floats
+    static final int batteryOffset = 124;
+    static final int modeOffset = 128;
+    static final int flagsOffset = 129;
+    static final int commandLengthOffset = 130;
+    static final int commandsOffset = 131;
+    static final int checksumOffset = frameSize - 4; // CRC32 of everything before it
+
+    static final int brownoutFlag = 1;
+    static final int dsAttachedFlag = 2;
+    static final int fmsAttachedFlag = 4;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private long sequence = 0;
+
+    private final ByteBuffer frame = ByteBuffer.allocate(frameSize).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 checksum = new CRC32();
+
+    private Supplier<SwerveModuleState[]> measuredStates = null; // Left unset on a drivetrain without modules
+    private Supplier<SwerveModuleState[]> desiredStates = null;
+
+    private final DoubleSupplier[] outputs = new DoubleSupplier[maxOutputs];
+    private int outputCount = 0;
+
+    private final Set<String> activeCommands = new LinkedHashSet<>();
+    private byte[] activeCommandBytes = new byte[0];
+
+    private BlackBoxRecorder() {
+        capacity = (int) Math.ceil(BlackBoxConstants.recordSeconds / TimedRobot.kDefaultPeriod);
+
+        File file = new File(Filesystem.getOperatingDirectory(), BlackBoxConstants.fileName);
+        dumpPreviousRun(file);
+        buffer = open(file);
+
+        CommandScheduler.getInstance().onCommandInitialize(command -> commandsChanged(activeCommands.add(command.getName())));
+        CommandScheduler.getInstance().onCommandFinish(command -> commandsChanged(activeCommands.remove(command.getName())));
+        CommandScheduler.getInstance().onCommandInterrupt(command -> commandsChanged(activeCommands.remove(command.getName())));
+    }
+
+    private void dumpPreviousRun(File file) {
+        if (!file.exists()) {
+            return;
+        }
+
+        File dumpDirectory = new File(Filesystem.getOperatingDirectory(), BlackBoxConstants.dumpDirectory);
+        try {
+            File dump = BlackBoxDecoder.dump(file, dumpDirectory, BlackBoxConstants.dumpSeconds);
+            if (dump != null) {
+                DriverStation.reportWarning("Black box of the previous run saved to " + dump.getPath(), false);
+            }
+        } catch (IOException e) {
+            DriverStation.reportError("Failed to decode the previous black box: " + e.getMessage(), e.getStackTrace());
+        }
+
+        File[] dumps = dumpDirectory.listFiles((dir, name) -> name.endsWith(".csv"));
+        if (dumps != null && dumps.length > BlackBoxConstants.maxDumps) {
+            Arrays.sort(dumps, Comparator.comparingLong(File::lastModified));
+            for (int i = 0; i < dumps.length - BlackBoxConstants.maxDumps; i++) {
+                dumps[i].delete();
+            }
+        }
+    }
+
+    /* Sizes, clears and maps the file for this run, null if it can't be opened so recording is skipped */
+    private MappedByteBuffer open(File file) {
+        long size = headerSize + (long) capacity * frameSize;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0); // Clears the previous run's frames, their sequence numbers would mix with this run's
+            raf.setLength(size);
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            mapped.putInt(magicOffset, magic);
+            mapped.putInt(versionOffset, version);
+            mapped.putInt(frameSizeOffset, frameSize);
+            mapped.putInt(capacityOffset, capacity);
+            mapped.putLong(nextSequenceOffset, 0);
+            mapped.putLong(startTimeOffset, System.currentTimeMillis());
+            mapped.putInt(outputCountOffset, 0);
+
+            return mapped;
+        } catch (IOException e) {
+            DriverStation.reportError("Failed to open the black box, it won't record: " + e.getMessage(), e.getStackTrace());
+            return null;
+        }
+    }
+
+    private void commandsChanged(boolean changed) {
+        if (!changed) {
+            return;
+        }
+
+        byte[] bytes = String.join(",", activeCommands).getBytes(StandardCharsets.US_ASCII);
+        activeCommandBytes = (bytes.length > maxCommandBytes) ? Arrays.copyOf(bytes, maxCommandBytes) : bytes;
+    }
+
+    /**
+    * Records a mechanism output in every frame, up to {@link #maxOutputs} of them.
+    *
+    * @param name The output's column name in the decoded CSV.
+    * @param supplier Reads the output, should only read cached values (no CAN traffic).
+    */
+    public void addOutput(String name, DoubleSupplier supplier) {
+        if (outputCount >= maxOutputs) {
+            DriverStation.reportWarning("Black box is full, not recording " + name, false);
+            return;
+        }
+
+        outputs[outputCount] = supplier;
+
+        if (buffer != null) {
+            byte[] nameBytes = Arrays.copyOf(name.getBytes(StandardCharsets.US_ASCII), outputNameSize);
+            buffer.put(outputNamesOffset + outputCount * outputNameSize, nameBytes);
+            buffer.putInt(outputCountOffset, outputCount + 1);
+        }
+
+        outputCount++;
+    }
+
+    /** Sets where the measured and desired module states come from, only the swerve drivetrain has them */
+    public void setModuleStates(Supplier<SwerveModuleState[]> measured, Supplier<SwerveModuleState[]> desired) {
+        measuredStates = measured;
+        desiredStates = desired;
+    }
+
+    /** Writes this loop's frame, call once per loop after the scheduler has run */
+    public void record() {
+        if (buffer == null) {
+            return;
+        }
+
+        Pose2d pose = PoseEstimator.getInstance().getPosition();
+
+        frame.clear();
+        frame.putLong(sequenceOffset, sequence);
+        frame.putDouble(timestampOffset, Timer.getFPGATimestamp());
+
+        frame.putFloat(poseOffset, (float) pose.getX());
+        frame.putFloat(poseOffset + 4, (float) pose.getY());
+        frame.putFloat(poseOffset + 8, (float) pose.getRotation().getRadians());
+
+        if (measuredStates != null) {
+            putStates(measuredStatesOffset, measuredStates.get());
+            putStates(desiredStatesOffset, desiredStates.get());
+        } else {
+            Arrays.fill(frame.array(), measuredStatesOffset, outputsOffset, (byte) 0);
+        }
+
+        for (int i = 0; i < maxOutputs; i++) {
+            frame.putFloat(outputsOffset + i * 4, (i < outputCount) ? (float) outputs[i].getAsDouble() : 0.0f);
+        }
+
+        frame.putFloat(batteryOffset, (float) RobotController.getBatteryVoltage());
+        frame.put(modeOffset, (byte) getMode());
+        frame.put(flagsOffset, (byte) ((RobotController.isBrownedOut() ? brownoutFlag : 0)
+            | (DriverStation.isDSAttached() ? dsAttachedFlag : 0)
+            | (DriverStation.isFMSAttached() ? fmsAttachedFlag : 0)));
+
+        byte[] commands = activeCommandBytes;
+        frame.put(commandLengthOffset, (byte) commands.length);
+        frame.put(commandsOffset, commands);
+        Arrays.fill(frame.array(), commandsOffset + commands.length, commandsOffset + maxCommandBytes, (byte) 0);
+
+        checksum.reset();
+        checksum.update(frame.array(), 0, checksumOffset);
+        frame.putInt(checksumOffset, (int) checksum.getValue());
+
+        int slot = (int) (sequence % capacity);
+        buffer.put(headerSize + slot * frameSize, frame.array());
+
+        sequence++;
+        buffer.putLong(nextSequenceOffset, sequence);
+    }
+
+    private void putStates(int offset, SwerveModuleState[] states) {
+        for (int i = 0; i < states.length; i++) {
+            frame.putFloat(offset + i * 8, (float) states[i].speedMetersPerSecond);
+            frame.putFloat(offset + i * 8 + 4, (float) states[i].angle.getRadians());
+        }
+    }
+
+    /* 0 disabled, 1 autonomous, 2 teleop, 3 test */
+    private static int getMode() {
+        if (DriverStation.isDisabled()) return 0;
+        if (DriverStation.isAutonomous()) return 1;
+        if (DriverStation.isTest()) return 3;
+        return 2;
+    }
+}
@@ -0,0 +1,151 @@
+package frc.robot.utilities;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import com.revrobotics.CANSparkMax;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+import frc.robot.utilities.CANSparkMaxUtil.Usage;
+import frc.robot.utilities.constants.Constants;
+
+/**
+ * Switches every registered Spark Max between an active and an idle status frame profile depending on
+ * the robot mode and whether its mechanism is being used, and reports the expected CAN bus load.
+ */
+public class CANBusBudget extends SubsystemBase {
+    private static CANBusBudget instance;
+
+    public static CANBusBudget getInstance() {
+        if (instance == null) instance = new CANBusBudget();
+        return instance;
+    }
+
+    private static class Device {
+        private final CANSparkMax motor;
+        private final Usage activeUsage;
+        private final Usage idleUsage;
+        private final boolean enableFollowing;
+        private final BooleanSupplier isActive;
+
+        private volatile Usage appliedUsage;
+        private double lastActiveTimestamp = Double.NEGATIVE_INFINITY;
+
+        private Device(CANSparkMax motor, Usage activeUsage, Usage idleUsage, boolean enableFollowing, BooleanSupplier isActive) {
+            this.motor = motor;
+            this.activeUsage = activeUsage;
+            this.idleUsage = idleUsage;
+            this.enableFollowing = enableFollowing;
+            this.isActive = isActive;
+        }
+    }
+
+    private final List<Device> devices = new CopyOnWriteArrayList<>(); // Read from the CAN health monitor's thread
+    private double expectedFramesPerSecond = 0.0;
+    private boolean forceFullTelemetry = false;
+
+    private CANBusBudget() {
+        setName("CANBusBudget");
+    }
+
+    /**
+    * Adds a Spark Max to the bus budget and applies its idle profile until the robot is enabled.
+    *
+    * @param motor The motor to manage the status frame periods of.
+    * @param activeUsage The status frame profile to use while the robot is enabled and the mechanism is active.
+    * @param idleUsage The status frame profile to use while the robot is disabled or the mechanism is idle.
+    * @param isActive Whether the mechanism is currently being used, should only read cached values (no CAN traffic).
+    */
+    public void register(CANSparkMax motor, Usage activeUsage, Usage idleUsage, BooleanSupplier isActive) {
+        register(motor, activeUsage, idleUsage, false, isActive);
+    }
+
+    /**
+    * @param motor The motor to manage the status frame periods of.
+    * @param activeUsage The status frame profile to use while the robot is enabled and the mechanism is active.
+    * @param idleUsage The status frame profile to use while the robot is disabled or the mechanism is idle.
+    * @param enableFollowing Whether another motor follows this one (keeps Status 0 fast).
+    * @param isActive Whether the mechanism is currently being used, should only read cached values (no CAN traffic).
+    */
+    public void register(CANSparkMax motor, Usage activeUsage, Usage idleUsage, boolean enableFollowing, BooleanSupplier isActive) {
+        Device device = new Device(motor, activeUsage, idleUsage, enableFollowing, isActive);
+        devices.add(device);
+        apply(device, idleUsage);
+    }
+
+    private void apply(Device device, Usage usage) {
+        CANSparkMaxUtil.setCANSparkMaxBusUsage(device.motor, usage, device.enableFollowing);
+        device.appliedUsage = usage;
+        expectedFramesPerSecond = calculateExpectedFramesPerSecond();
+    }
+
+    private double calculateExpectedFramesPerSecond() {
+        double framesPerSecond = 0.0;
+        for (Device device : devices) {
+            framesPerSecond += CANSparkMaxUtil.getFramesPerSecond(device.appliedUsage, device.enableFollowing);
+        }
+
+        return framesPerSecond;
+    }
+
+    /** Returns the profile currently applied to a motor, or null if the motor isn't registered */
+    public Usage getAppliedUsage(CANSparkMax motor) {
+        for (Device device : devices) {
+            if (device.motor == motor) {
+                return device.appliedUsage;
+            }
+        }
+
+        return null;
+    }
+
+    /** Puts every registered Spark Max on the full status frame profile regardless of activity, used while characterizing mechanisms */
+    public void setForceFullTelemetry(boolean forceFullTelemetry) {
+        this.forceFullTelemetry = forceFullTelemetry;
+    }
+
+    /** Returns the number of periodic status frames per second all registered Spark Maxes are expected to send */
+    public double getExpectedFramesPerSecond() {
+        return expectedFramesPerSecond;
+    }
+
+    /** Returns the fraction (0 to 1) of the CAN bus the registered Spark Max status frames are expected to use */
+    public double getExpectedUtilization() {
+        return expectedFramesPerSecond * Constants.CANBusConstants.bitsPerFrame / Constants.CANBusConstants.busBitrate;
+    }
+
+    @Override
+    public void periodic() {
+        double timestamp = Timer.getFPGATimestamp();
+        boolean enabled = DriverStation.isEnabled();
+
+        for (Device device : devices) {
+            if (enabled && device.isActive.getAsBoolean()) {
+                device.lastActiveTimestamp = timestamp;
+            }
+
+            // Stay on the active profile for a short holdoff so a mechanism toggling on and off doesn't flood the bus with configuration frames
+            boolean active = enabled && (timestamp - device.lastActiveTimestamp) < Constants.CANBusConstants.idleHoldoffSeconds;
+            Usage desiredUsage = forceFullTelemetry ? Usage.kAll : (active ? device.activeUsage : device.idleUsage);
+
+            if (desiredUsage != device.appliedUsage) {
+                apply(device, desiredUsage);
+            }
+        }
+
+        if (!Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+            return;
+        }
+
+        double expectedUtilization = getExpectedUtilization();
+
+        SmartDashboard.putNumber("CAN Expected Frames Per Second", expectedFramesPerSecond);
+        SmartDashboard.putNumber("CAN Expected Utilization", expectedUtilization * 100.0);
+        SmartDashboard.putBoolean("CAN Within Budget", expectedUtilization <= Constants.CANBusConstants.targetUtilization);
+    }
+}
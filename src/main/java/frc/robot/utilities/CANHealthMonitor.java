@@ -0,0 +1,240 @@
+package frc.robot.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+
+import com.revrobotics.CANSparkMax;
+
+import edu.wpi.first.hal.can.CANStatus;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+import frc.robot.utilities.CANSparkMaxUtil.Usage;
+import frc.robot.utilities.constants.Constants;
+
+/**
+ * Samples the CAN bus error counters and utilization on a background thread, and tracks how long it has been
+ * since every registered device last delivered fresh data so code can avoid acting on stale values.
+ *
+ * <p>Only devices registered with a real per-frame timestamp (Phoenix 6 signals, the NavX sample count) are
+ * reliable enough to gate anything on, and only they count toward "CAN Healthy", the stale device list and the
+ * {@code CAN/Stale/} log entries {@link frc.robot.tools.LogAnalyzer} summarizes. Spark Maxes are tracked from a
+ * proxy value, logged under {@code CAN/ProxyStale/} and only shown on the debug dashboard.
+ */
+public class CANHealthMonitor extends SubsystemBase {
+    private static CANHealthMonitor instance;
+
+    public static CANHealthMonitor getInstance() {
+        if (instance == null) instance = new CANHealthMonitor();
+        return instance;
+    }
+
+    /* Upper edges of the device update age histogram buckets, in seconds (the last bucket catches everything above) */
+    private static final double[] ageBucketEdges = {0.01, 0.02, 0.05, 0.1, 0.25, 0.5, 1.0};
+
+    private static class Device {
+        private final String name;
+        private final DoubleSupplier sample;
+        private final DoubleSupplier expectedPeriodSeconds;
+        private final boolean proxy; // Freshness is guessed from a value that can repeat, never alarmed on
+
+        private double lastSample = Double.NaN;
+        private double lastUpdateTimestamp;
+        private double lastThreshold = Double.NaN;
+        private double graceThreshold = 0.0; // The threshold before the expected period last changed
+        private double graceEndTimestamp = Double.NEGATIVE_INFINITY;
+        private volatile double age = 0.0;
+        private volatile boolean stale = false;
+
+        private Device(String name, DoubleSupplier sample, DoubleSupplier expectedPeriodSeconds, boolean proxy, double timestamp) {
+            this.name = name;
+            this.sample = sample;
+            this.expectedPeriodSeconds = expectedPeriodSeconds;
+            this.proxy = proxy;
+            this.lastUpdateTimestamp = timestamp;
+        }
+    }
+
+    private final List<Device> devices = new ArrayList<>();
+    private final Notifier notifier;
+
+    private final long[] utilizationHistogram = new long[10];
+    private final long[] ageHistogram = new long[ageBucketEdges.length + 1];
+
+    private double utilization = 0.0;
+    private double peakUtilization = 0.0;
+    private int busOffCount = 0;
+    private int txFullCount = 0;
+    private int receiveErrorCount = 0;
+    private int transmitErrorCount = 0;
+    private int staleDeviceCount = 0;
+
+    private CANHealthMonitor() {
+        setName("CANHealthMonitor");
+
+        notifier = new Notifier(this::sample);
+        notifier.setName("CANHealthMonitor");
+        notifier.startPeriodic(Constants.CANBusConstants.healthSamplePeriodSeconds);
+    }
+
+    /**
+    * Adds a device to the staleness monitor. The sample supplier is called from the monitor's thread, so it
+    * must be thread safe and should only read values the vendor library already has cached.
+    *
+    * @param name The name the device is published under.
+    * @param sample A value that changes every time a fresh status frame is received from the device.
+    * @param expectedPeriodSeconds How often the device is expected to send the sampled value.
+    * @return Whether the device is currently stale, cheap enough to check every loop.
+    */
+    public BooleanSupplier register(String name, DoubleSupplier sample, DoubleSupplier expectedPeriodSeconds) {
+        return register(name, sample, expectedPeriodSeconds, false);
+    }
+
+    private synchronized BooleanSupplier register(String name, DoubleSupplier sample, DoubleSupplier expectedPeriodSeconds, boolean proxy) {
+        Device device = new Device(name, sample, expectedPeriodSeconds, proxy, Timer.getFPGATimestamp());
+        devices.add(device);
+
+        BooleanSupplier stale = () -> device.stale;
+        RobotLogger.getInstance().addBoolean((proxy ? "CAN/ProxyStale/" : "CAN/Stale/") + name, stale);
+        return stale;
+    }
+
+    /**
+    * Adds a Spark Max to the staleness monitor, for diagnostics only. REV doesn't expose when a status frame
+    * arrived, so the bus voltage from Status 1 is watched instead. It can read the same for several frames in a row
+    * on a steady battery, so a Spark Max showing stale isn't proof it stopped sending. It's kept out of the health
+    * alarm, the stale device count, the update age histogram and the {@code CAN/Stale/} log.
+    *
+    * @param name The name the device is published and logged under.
+    * @param motor The motor to monitor.
+    */
+    public void registerSparkMax(String name, CANSparkMax motor) {
+        register(name, motor::getBusVoltage, () -> {
+            Usage usage = CANBusBudget.getInstance().getAppliedUsage(motor);
+            return CANSparkMaxUtil.getStatusFramePeriods(usage == null ? Usage.kAll : usage, false)[1] / 1000.0;
+        }, true);
+    }
+
+    private synchronized void sample() {
+        double timestamp = Timer.getFPGATimestamp();
+
+        CANStatus canStatus = RobotController.getCANStatus();
+        utilization = canStatus.percentBusUtilization;
+        peakUtilization = Math.max(peakUtilization, utilization);
+        utilizationHistogram[(int) Math.min(utilizationHistogram.length - 1, Math.max(0, utilization * utilizationHistogram.length))]++;
+
+        busOffCount = canStatus.busOffCount;
+        txFullCount = canStatus.txFullCount;
+        receiveErrorCount = canStatus.receiveErrorCount;
+        transmitErrorCount = canStatus.transmitErrorCount;
+
+        int stale = 0;
+        for (Device device : devices) {
+            double value = device.sample.getAsDouble();
+            if (value != device.lastSample) {
+                if (!device.proxy) {
+                    recordAge(timestamp - device.lastUpdateTimestamp);
+                }
+                device.lastSample = value;
+                device.lastUpdateTimestamp = timestamp;
+            }
+
+            double staleThreshold = Math.max(
+                Constants.CANBusConstants.minimumStaleSeconds,
+                device.expectedPeriodSeconds.getAsDouble() * Constants.CANBusConstants.staleFrameCount);
+
+            // When a device's frame period changes (CANBusBudget switching profiles), the last frame may have come at
+            // the old, slower rate, so the old threshold still applies for one more of its windows
+            if (!Double.isNaN(device.lastThreshold) && staleThreshold != device.lastThreshold) {
+                device.graceThreshold = Math.max(device.lastThreshold, staleThreshold);
+                device.graceEndTimestamp = timestamp + device.graceThreshold;
+            }
+            device.lastThreshold = staleThreshold;
+
+            if (timestamp < device.graceEndTimestamp) {
+                staleThreshold = Math.max(staleThreshold, device.graceThreshold);
+            }
+
+            device.age = timestamp - device.lastUpdateTimestamp;
+            device.stale = device.age > staleThreshold;
+
+            if (device.stale && !device.proxy) {
+                stale++;
+            }
+        }
+
+        staleDeviceCount = stale;
+    }
+
+    private void recordAge(double age) {
+        int bucket = 0;
+        while (bucket < ageBucketEdges.length && age > ageBucketEdges[bucket]) {
+            bucket++;
+        }
+
+        ageHistogram[bucket]++;
+    }
+
+    /** Clears the peak utilization and the histograms, called when autonomous starts so each match has its own */
+    public synchronized void resetStatistics() {
+        peakUtilization = 0.0;
+        Arrays.fill(utilizationHistogram, 0);
+        Arrays.fill(ageHistogram, 0);
+    }
+
+    @Override
+    public void periodic() {
+        StringBuilder staleDevices = new StringBuilder();
+        StringBuilder proxyStaleDevices = new StringBuilder();
+        synchronized (this) {
+            for (Device device : devices) {
+                if (device.stale) {
+                    StringBuilder list = device.proxy ? proxyStaleDevices : staleDevices;
+                    if (list.length() > 0) {
+                        list.append(", ");
+                    }
+                    list.append(device.name);
+                }
+            }
+        }
+
+        SmartDashboard.putString("CAN Stale Devices", staleDevices.toString());
+        SmartDashboard.putBoolean("CAN Healthy", staleDevices.length() == 0);
+
+        // Only the stale devices matter to the drive team, the counters and histograms are for the pit
+        if (!Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+            return;
+        }
+
+        double[] utilizationCounts = new double[utilizationHistogram.length];
+        double[] ageCounts = new double[ageHistogram.length];
+
+        synchronized (this) {
+            SmartDashboard.putNumber("CAN Utilization", utilization * 100.0);
+            SmartDashboard.putNumber("CAN Peak Utilization", peakUtilization * 100.0);
+            SmartDashboard.putNumber("CAN Bus Off Count", busOffCount);
+            SmartDashboard.putNumber("CAN TX Full Count", txFullCount);
+            SmartDashboard.putNumber("CAN Receive Error Count", receiveErrorCount);
+            SmartDashboard.putNumber("CAN Transmit Error Count", transmitErrorCount);
+            SmartDashboard.putNumber("CAN Stale Device Count", staleDeviceCount);
+
+            for (int i = 0; i < utilizationHistogram.length; i++) {
+                utilizationCounts[i] = utilizationHistogram[i];
+            }
+
+            for (int i = 0; i < ageHistogram.length; i++) {
+                ageCounts[i] = ageHistogram[i];
+            }
+        }
+
+        SmartDashboard.putNumberArray("CAN Utilization Histogram", utilizationCounts);
+        SmartDashboard.putNumberArray("CAN Update Age Histogram", ageCounts);
+        SmartDashboard.putString("CAN Possibly Stale Spark Maxes", proxyStaleDevices.toString());
+    }
+}
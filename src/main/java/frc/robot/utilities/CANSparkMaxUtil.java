@@ -12,6 +12,53 @@ public class CANSparkMaxUtil {
         kMinimal
     };
 
+    /* Status frames 4-6 (analog sensor, alternate encoder, duty cycle encoder) are left at their REV defaults */
+    public static final int[] unmanagedStatusFramePeriodsMs = {20, 200, 200};
+
+    /**
+    * Returns the periodic status frame periods (Status 0 through Status 3) that a usage profile applies.
+    *
+    * @param usage The status frame feedack to enable.
+    * @param enableFollowing Whether motor following is enabled.
+    * @return The periods in milliseconds, indexed by status frame number.
+    */
+    public static int[] getStatusFramePeriods(Usage usage, boolean enableFollowing) {
+        int status0 = enableFollowing ? 10 : 500;
+
+        switch (usage) {
+            case kPositionOnly:
+                return new int[] {status0, 500, 20, 500};
+            case kVelocityOnly:
+                return new int[] {status0, 20, 500, 500};
+            case kMinimal:
+                return new int[] {status0, 500, 500, 500};
+            case kAll:
+            default:
+                return new int[] {status0, 20, 20, 50};
+        }
+    }
+
+    /**
+    * Calculates how many periodic status frames per second a Spark Max sends with the given usage profile.
+    *
+    * @param usage The status frame feedack to enable.
+    * @param enableFollowing Whether motor following is enabled.
+    * @return The expected number of status frames per second, including the frames left at their defaults.
+    */
+    public static double getFramesPerSecond(Usage usage, boolean enableFollowing) {
+        double framesPerSecond = 0.0;
+
+        for (int period : getStatusFramePeriods(usage, enableFollowing)) {
+            framesPerSecond += 1000.0 / period;
+        }
+
+        for (int period : unmanagedStatusFramePeriodsMs) {
+            framesPerSecond += 1000.0 / period;
+        }
+
+        return framesPerSecond;
+    }
+
     /**
     * This function allows reducing a Spark Max's CAN bus utilization by reducing the periodic status
     * frame period of nonessential frames from 20ms to 500ms.
@@ -24,29 +71,12 @@ public class CANSparkMaxUtil {
     */
 
     public static void setCANSparkMaxBusUsage(CANSparkMax motor, Usage usage, boolean enableFollowing) {
-        if (enableFollowing) {
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus0, 10);
-        } else {
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus0, 500);
-        }
+        int[] periods = getStatusFramePeriods(usage, enableFollowing);
 
-        if (usage == Usage.kAll) {
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus1, 20);
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus2, 20);
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus3, 50);
-        } else if (usage == Usage.kPositionOnly) {
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus1, 500);
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus2, 20);
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus3, 500);
-        } else if (usage == Usage.kVelocityOnly) {
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus1, 20);
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus2, 500);
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus3, 500);
-        } else if (usage == Usage.kMinimal) {
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus1, 500);
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus2, 500);
-            motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus3, 500);
-        }
+        motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus0, periods[0]);
+        motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus1, periods[1]);
+        motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus2, periods[2]);
+        motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus3, periods[3]);
     }
 
   /**
@@ -61,4 +91,4 @@ public class CANSparkMaxUtil {
     public static void setCANSparkMaxBusUsage(CANSparkMax motor, Usage usage) {
         setCANSparkMaxBusUsage(motor, usage, false);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package frc.robot.utilities;
+
+import edu.wpi.first.cameraserver.CameraServer;
+import edu.wpi.first.cscore.CameraServerJNI;
+import edu.wpi.first.cscore.MjpegServer;
+import edu.wpi.first.cscore.UsbCamera;
+import edu.wpi.first.cscore.VideoEvent;
+import edu.wpi.first.cscore.VideoListener;
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+import edu.wpi.first.cscore.VideoSource.ConnectionStrategy;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+import frc.robot.utilities.constants.Constants.DriverCameraConstants;
+import frc.robot.utilities.constants.DriverCameraProfile;
+
+/**
+ * Runs the USB driver camera with a resolution, frame rate and compression picked per robot mode, instead of
+ * the default capture that streams whatever the camera offers all match. The camera is asked for MJPEG at the
+ * stream's own size so the roboRIO forwards its frames without recompressing them, and it is closed whenever
+ * the current mode doesn't stream or nobody is watching. The stream's measured frame rate, data rate and an
+ * estimate of its CPU cost are published so it can be checked against the loop's headroom.
+ */
+public class DriverCamera extends SubsystemBase {
+    private static DriverCamera instance;
+
+    public static DriverCamera getInstance() {
+        if (instance == null) instance = new DriverCamera();
+        return instance;
+    }
+
+    private final UsbCamera camera;
+    private final MjpegServer server;
+    private final VideoListener clientListener;
+
+    private volatile boolean clientConnected = false; // Set from cscore's event thread
+    private DriverCameraProfile appliedProfile = null;
+    private boolean streaming = false;
+
+    private DriverCamera() {
+        setName("DriverCamera");
+
+        CameraServerJNI.setTelemetryPeriod(DriverCameraConstants.telemetryPeriodSeconds);
+
+        camera = new UsbCamera("Driver Camera", DriverCameraConstants.usbPort);
+        camera.setConnectionStrategy(ConnectionStrategy.kForceClose);
+        server = CameraServer.startAutomaticCapture(camera);
+
+        // The MJPEG server is enabled while at least one dashboard is connected to it
+        clientListener = new VideoListener(event -> {
+            if (event.sinkHandle == server.getHandle()) {
+                clientConnected = event.kind == VideoEvent.Kind.kSinkEnabled;
+            }
+        }, VideoEvent.Kind.kSinkEnabled.getValue() | VideoEvent.Kind.kSinkDisabled.getValue(), true);
+    }
+
+    private DriverCameraProfile getModeProfile() {
+        if (DriverStation.isDisabled()) return DriverCameraConstants.disabledProfile;
+        if (DriverStation.isAutonomous()) return DriverCameraConstants.autonomousProfile;
+        if (DriverStation.isTest()) return DriverCameraConstants.testProfile;
+        return DriverCameraConstants.teleopProfile;
+    }
+
+    private void apply(DriverCameraProfile profile) {
+        camera.setVideoMode(PixelFormat.kMJPEG, profile.width, profile.height, profile.fps);
+        server.setResolution(profile.width, profile.height);
+        server.setFPS(profile.fps);
+        server.setCompression(profile.compression);
+        appliedProfile = profile;
+    }
+
+    /** Returns the estimated roboRIO CPU the stream is using, in percent */
+    public double getEstimatedCpuPercent() {
+        if (!streaming || appliedProfile == null) {
+            return 0.0;
+        }
+
+        double megapixelsPerSecond = camera.getActualFPS() * appliedProfile.width * appliedProfile.height / 1e6;
+        double costPerMegapixel = (appliedProfile.compression < 0)
+            ? DriverCameraConstants.passthroughCpuPercentPerMegapixelPerSecond
+            : DriverCameraConstants.recompressCpuPercentPerMegapixelPerSecond;
+
+        return megapixelsPerSecond * costPerMegapixel;
+    }
+
+    @Override
+    public void periodic() {
+        DriverCameraProfile profile = getModeProfile();
+        if (profile != appliedProfile) {
+            apply(profile);
+        }
+
+        // Closing the camera stops the USB capture and the server's work entirely, not just the frames going out
+        boolean shouldStream = profile.enabled && clientConnected;
+        if (shouldStream != streaming) {
+            camera.setConnectionStrategy(shouldStream ? ConnectionStrategy.kKeepOpen : ConnectionStrategy.kForceClose);
+            streaming = shouldStream;
+        }
+
+        SmartDashboard.putBoolean("Driver Camera Streaming", streaming);
+        if (!Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+            return;
+        }
+
+        SmartDashboard.putNumber("Driver Camera FPS", streaming ? camera.getActualFPS() : 0.0);
+        SmartDashboard.putNumber("Driver Camera KB Per Second", streaming ? camera.getActualDataRate() / 1024.0 : 0.0);
+        SmartDashboard.putNumber("Driver Camera Estimated CPU", getEstimatedCpuPercent());
+    }
+}
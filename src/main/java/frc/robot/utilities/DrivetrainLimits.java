@@ -0,0 +1,116 @@
+package frc.robot.utilities;
+
+import edu.wpi.first.math.system.plant.DCMotor;
+
+import frc.robot.utilities.constants.Constants.AutonomousConstants;
+import frc.robot.utilities.constants.Constants.ModuleConstants;
+import frc.robot.utilities.constants.Constants.SwerveConstants;
+
+/**
+ * What the drivetrain can physically do, worked out from the drive motors, their current limit, the measured
+ * drive feedforward gains and the wheel traction. Unlike fixed path constraints the acceleration depends on how
+ * fast the robot is already going and how hard it's cornering, so a path can use all of it at low speed and
+ * still be realistic near top speed.
+ */
+public class DrivetrainLimits {
+    private static DrivetrainLimits instance;
+
+    public static DrivetrainLimits getInstance() {
+        if (instance == null) instance = new DrivetrainLimits();
+        return instance;
+    }
+
+    private static final double gravity = 9.81;
+
+    private final double maxWheelSpeed;
+    private final double currentLimitedAcceleration;
+    private final double tractionLimit;
+
+    private DrivetrainLimits() {
+        DCMotor motor = SwerveConstants.DriveMotor;
+        int moduleCount = SwerveConstants.ModuleLocations.length;
+        double wheelRadius = SwerveConstants.WheelDiameter / 2.0;
+
+        // Fastest the wheels turn, either the motor's free speed or where the measured feedforward runs out of voltage
+        double freeSpeed = motor.freeSpeedRadPerSec / SwerveConstants.DriveGearRatio * wheelRadius
+            * (SwerveConstants.ProfileNominalVoltage / motor.nominalVoltageVolts);
+        double feedforwardSpeed = (SwerveConstants.ProfileNominalVoltage - ModuleConstants.driveKS) / ModuleConstants.driveKV;
+        maxWheelSpeed = Math.min(freeSpeed, feedforwardSpeed) * SwerveConstants.ProfileSafetyFactor;
+
+        // Every module pushes with the torque the current limit allows, through the gearbox to the wheel
+        double moduleForce = motor.getTorque(ModuleConstants.driveContinuousCurrentLimit) * SwerveConstants.DriveGearRatio / wheelRadius;
+        currentLimitedAcceleration = moduleCount * moduleForce / SwerveConstants.RobotMassKilograms * SwerveConstants.ProfileSafetyFactor;
+
+        tractionLimit = SwerveConstants.WheelCoefficientOfFriction * gravity * SwerveConstants.ProfileSafetyFactor;
+    }
+
+    /** Returns the fastest the robot can drive in a straight line without rotating, in meters per second */
+    public double getMaxSpeed() {
+        return maxWheelSpeed;
+    }
+
+    /** Returns the fastest the robot can rotate in place, in radians per second */
+    public double getMaxAngularSpeed() {
+        return maxWheelSpeed / AutonomousConstants.DriveBaseRadius;
+    }
+
+    /** Returns how hard the robot can accelerate from rest, in meters per second squared */
+    public double getMaxAcceleration() {
+        return getMaxAcceleration(0.0, 0.0);
+    }
+
+    /** Returns how fast the robot's rotation can speed up from rest, in radians per second squared */
+    public double getMaxAngularAcceleration() {
+        return getMaxAcceleration() / AutonomousConstants.DriveBaseRadius;
+    }
+
+    /**
+    * Returns how hard the robot can speed up along a path.
+    *
+    * @param speed How fast the robot is already going, in meters per second.
+    * @param curvature The path's curvature where the robot is, in 1 / meters.
+    * @return The largest acceleration along the path, in meters per second squared, 0 if there is none left.
+    */
+    public double getMaxAcceleration(double speed, double curvature) {
+        // The measured feedforward gives what's left of the voltage after the back EMF and friction
+        double voltageLimited = (SwerveConstants.ProfileNominalVoltage - ModuleConstants.driveKS - ModuleConstants.driveKV * speed) / ModuleConstants.driveKA;
+
+        return Math.max(0.0, Math.min(Math.min(voltageLimited, currentLimitedAcceleration), getTangentialTraction(speed, curvature)));
+    }
+
+    /**
+    * Returns how hard the robot can slow down along a path. Braking isn't short of voltage, the back EMF helps,
+    * so only the current limit and the traction matter.
+    *
+    * @param speed How fast the robot is going, in meters per second.
+    * @param curvature The path's curvature where the robot is, in 1 / meters.
+    * @return The largest deceleration along the path as a positive number, in meters per second squared.
+    */
+    public double getMaxDeceleration(double speed, double curvature) {
+        return Math.max(0.0, Math.min(currentLimitedAcceleration, getTangentialTraction(speed, curvature)));
+    }
+
+    /**
+    * Returns the fastest the robot can follow a curve before the wheels slide sideways.
+    *
+    * @param curvature The path's curvature, in 1 / meters.
+    * @return The speed limit in meters per second, never above the top speed.
+    */
+    public double getMaxCorneringSpeed(double curvature) {
+        if (Math.abs(curvature) < 1e-6) {
+            return maxWheelSpeed;
+        }
+
+        return Math.min(maxWheelSpeed, Math.sqrt(tractionLimit / Math.abs(curvature)));
+    }
+
+    /* The wheels' grip is shared between cornering and speeding up or slowing down, whatever the turn doesn't use is left */
+    private double getTangentialTraction(double speed, double curvature) {
+        double centripetal = speed * speed * Math.abs(curvature);
+        if (centripetal >= tractionLimit) {
+            return 0.0;
+        }
+
+        return Math.sqrt(tractionLimit * tractionLimit - centripetal * centripetal);
+    }
+}
@@ -0,0 +1,318 @@
+package frc.robot.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+
+import frc.robot.utilities.constants.FieldConstants;
+
+/**
+ * Distance maps over PathPlanner's navgrid, computed once at startup for a few fixed goals. Every free cell
+ * stores its travel distance to the goal and the next cell to drive to, so the remaining distance, travel time
+ * and next waypoint toward a goal are array lookups instead of a search during the match. Cells that are blocked or
+ * can't reach the goal, where the robot ends up after bumping a wall or from pose error, store the nearest cell
+ * that can, so those are a lookup too.
+ */
+public class FlowField {
+    private static FlowField instance;
+
+    public static FlowField getInstance() {
+        if (instance == null) instance = new FlowField();
+        return instance;
+    }
+
+    public enum Goal {
+        BLUE_SPEAKER(FieldConstants.Coordinates.BLUE_SPEAKER_SCORING),
+        RED_SPEAKER(FieldConstants.Coordinates.RED_SPEAKER_SCORING),
+        BLUE_AMP(FieldConstants.Coordinates.BLUE_AMP),
+        RED_AMP(FieldConstants.Coordinates.RED_AMP),
+        BLUE_SOURCE(FieldConstants.Coordinates.BLUE_SOURCE),
+        RED_SOURCE(FieldConstants.Coordinates.RED_SOURCE);
+
+        public final Pose2d pose;
+
+        Goal(Pose2d pose) {
+            this.pose = pose;
+        }
+    }
+
+    /* The eight neighbours of a cell, sides first then diagonals */
+    private static final int[] rowSteps = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] columnSteps = {0, 0, -1, 1, -1, 1, -1, 1};
+    private static final double diagonalCost = Math.sqrt(2.0);
+
+    private static class DistanceMap {
+        private final float[] distance; // Meters to the goal from each cell, infinity if the goal can't be reached
+        private final int[] next; // Index of the next cell toward the goal, -1 at the goal or if it can't be reached
+        private final int[] redirect; // Nearest cell that can reach the goal, itself if it can, -1 if none can
+        private final Translation2d goal;
+
+        private DistanceMap(int cells, Translation2d goal) {
+            this.distance = new float[cells];
+            this.next = new int[cells];
+            this.redirect = new int[cells];
+            this.goal = goal;
+        }
+    }
+
+    private int rows = 0;
+    private int columns = 0;
+    private double nodeSize = 1.0;
+    private boolean[] obstacles = new boolean[0];
+
+    private final Map<Goal, DistanceMap> maps = new EnumMap<>(Goal.class);
+
+    private FlowField() {
+        try {
+            loadNavgrid(new File(Filesystem.getDeployDirectory(), "pathplanner/navgrid.json"));
+        } catch (IOException e) {
+            DriverStation.reportError("Failed to load the navgrid for the flow fields: " + e.getMessage(), e.getStackTrace());
+            return;
+        }
+
+        for (Goal goal : Goal.values()) {
+            maps.put(goal, build(goal.pose.getTranslation()));
+        }
+    }
+
+    private void loadNavgrid(File file) throws IOException {
+        JsonNode navgrid = new ObjectMapper().readTree(file);
+        JsonNode grid = navgrid.get("grid");
+
+        nodeSize = navgrid.get("nodeSizeMeters").asDouble();
+        rows = grid.size();
+        columns = grid.get(0).size();
+        obstacles = new boolean[rows * columns];
+
+        // Rows go up the field in y and columns go down the field in x, true means the cell is blocked
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                obstacles[row * columns + column] = grid.get(row).get(column).asBoolean();
+            }
+        }
+    }
+
+    /* Dijkstra outward from the goal, so each cell ends up pointing at its neighbour closest to the goal */
+    private DistanceMap build(Translation2d goal) {
+        DistanceMap map = new DistanceMap(rows * columns, goal);
+        Arrays.fill(map.distance, Float.POSITIVE_INFINITY);
+        Arrays.fill(map.next, -1);
+        Arrays.fill(map.redirect, -1);
+
+        int goalCell = nearestFreeCell(toCell(goal));
+        if (goalCell < 0) {
+            return map;
+        }
+
+        PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        map.distance[goalCell] = 0.0f;
+        queue.add(new double[] {0.0, goalCell});
+
+        while (!queue.isEmpty()) {
+            double[] entry = queue.poll();
+            int cell = (int) entry[1];
+            if (entry[0] > map.distance[cell]) {
+                continue;
+            }
+
+            int row = cell / columns;
+            int column = cell % columns;
+
+            for (int i = 0; i < rowSteps.length; i++) {
+                int neighbourRow = row + rowSteps[i];
+                int neighbourColumn = column + columnSteps[i];
+                if (!isFree(neighbourRow, neighbourColumn)) {
+                    continue;
+                }
+
+                boolean diagonal = rowSteps[i] != 0 && columnSteps[i] != 0;
+                // Don't cut across the corner of an obstacle, the robot is wider than the gap
+                if (diagonal && (!isFree(row + rowSteps[i], column) || !isFree(row, column + columnSteps[i]))) {
+                    continue;
+                }
+
+                int neighbour = neighbourRow * columns + neighbourColumn;
+                double distance = map.distance[cell] + (diagonal ? diagonalCost : 1.0) * nodeSize;
+
+                if (distance < map.distance[neighbour]) {
+                    map.distance[neighbour] = (float) distance;
+                    map.next[neighbour] = cell;
+                    queue.add(new double[] {distance, neighbour});
+                }
+            }
+        }
+
+        buildRedirects(map);
+        return map;
+    }
+
+    /* Dijkstra outward from every reachable cell at once, across obstacles too, so every cell learns its nearest reachable one */
+    private void buildRedirects(DistanceMap map) {
+        float[] offset = new float[rows * columns];
+        Arrays.fill(offset, Float.POSITIVE_INFINITY);
+        PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+
+        for (int cell = 0; cell < offset.length; cell++) {
+            if (map.distance[cell] != Float.POSITIVE_INFINITY) {
+                offset[cell] = 0.0f;
+                map.redirect[cell] = cell;
+                queue.add(new double[] {0.0, cell});
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            double[] entry = queue.poll();
+            int cell = (int) entry[1];
+            if (entry[0] > offset[cell]) {
+                continue;
+            }
+
+            int row = cell / columns;
+            int column = cell % columns;
+
+            for (int i = 0; i < rowSteps.length; i++) {
+                int neighbourRow = row + rowSteps[i];
+                int neighbourColumn = column + columnSteps[i];
+                if (neighbourRow < 0 || neighbourRow >= rows || neighbourColumn < 0 || neighbourColumn >= columns) {
+                    continue;
+                }
+
+                int neighbour = neighbourRow * columns + neighbourColumn;
+                double distance = offset[cell] + ((rowSteps[i] != 0 && columnSteps[i] != 0) ? diagonalCost : 1.0);
+
+                if (distance < offset[neighbour]) {
+                    offset[neighbour] = (float) distance;
+                    map.redirect[neighbour] = map.redirect[cell];
+                    queue.add(new double[] {distance, neighbour});
+                }
+            }
+        }
+    }
+
+    private boolean isFree(int row, int column) {
+        return row >= 0 && row < rows && column >= 0 && column < columns && !obstacles[row * columns + column];
+    }
+
+    private int toCell(Translation2d position) {
+        int row = (int) Math.max(0, Math.min(rows - 1, Math.floor(position.getY() / nodeSize)));
+        int column = (int) Math.max(0, Math.min(columns - 1, Math.floor(position.getX() / nodeSize)));
+        return row * columns + column;
+    }
+
+    private Translation2d toPosition(int cell) {
+        return new Translation2d(((cell % columns) + 0.5) * nodeSize, ((cell / columns) + 0.5) * nodeSize);
+    }
+
+    /* Goals can sit inside a blocked cell (against a wall), so use the closest free one, only searched while building the maps */
+    private int nearestFreeCell(int cell) {
+        if (obstacles.length == 0) {
+            return -1;
+        }
+
+        int row = cell / columns;
+        int column = cell % columns;
+
+        for (int radius = 0; radius < Math.max(rows, columns); radius++) {
+            int best = -1;
+            double bestDistance = Double.POSITIVE_INFINITY;
+
+            for (int r = row - radius; r <= row + radius; r++) {
+                for (int c = column - radius; c <= column + radius; c++) {
+                    if (Math.max(Math.abs(r - row), Math.abs(c - column)) == radius && isFree(r, c)) {
+                        double distance = Math.hypot(r - row, c - column);
+                        if (distance < bestDistance) {
+                            best = r * columns + c;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+            }
+
+            if (best >= 0) {
+                return best;
+            }
+        }
+
+        return -1;
+    }
+
+    private int lookupCell(DistanceMap map, Translation2d position) {
+        return map.redirect[toCell(position)];
+    }
+
+    /**
+    * Returns the travel distance in meters from a position to a goal around the field obstacles.
+    *
+    * @return The distance, or infinity if the goal can't be reached or the navgrid didn't load.
+    */
+    public double getDistance(Goal goal, Translation2d position) {
+        DistanceMap map = maps.get(goal);
+        if (map == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        int cell = lookupCell(map, position);
+        if (cell < 0 || map.distance[cell] == Float.POSITIVE_INFINITY) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return map.distance[cell] + position.getDistance(toPosition(cell));
+    }
+
+    /**
+    * Returns where to drive next from a position to reach a goal, the center of the next grid cell toward it.
+    *
+    * @return The next waypoint, or the goal itself if the robot is already in the goal's cell or the goal can't be reached.
+    */
+    public Translation2d getNextWaypoint(Goal goal, Translation2d position) {
+        DistanceMap map = maps.get(goal);
+        if (map == null) {
+            return goal.pose.getTranslation();
+        }
+
+        int cell = lookupCell(map, position);
+        if (cell < 0 || map.next[cell] < 0) {
+            return map.goal;
+        }
+
+        return toPosition(map.next[cell]);
+    }
+
+    /**
+    * Estimates how long driving from a position to a goal takes, accelerating from and stopping at rest with
+    * the drivetrain's limits.
+    *
+    * @return The travel time in seconds, or infinity if the goal can't be reached.
+    */
+    public double getTravelTimeSeconds(Goal goal, Translation2d position) {
+        return estimateTravelTimeSeconds(
+            getDistance(goal, position),
+            DrivetrainLimits.getInstance().getMaxSpeed(),
+            DrivetrainLimits.getInstance().getMaxAcceleration());
+    }
+
+    /** Returns the time a trapezoidal velocity profile takes to cover a distance, starting and ending at rest */
+    public static double estimateTravelTimeSeconds(double distance, double maxVelocity, double maxAcceleration) {
+        if (Double.isInfinite(distance)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        // Never reaches full speed, accelerates for half the distance then slows down for the other half
+        if (distance < maxVelocity * maxVelocity / maxAcceleration) {
+            return 2.0 * Math.sqrt(distance / maxAcceleration);
+        }
+
+        return distance / maxVelocity + maxVelocity / maxAcceleration;
+    }
+}
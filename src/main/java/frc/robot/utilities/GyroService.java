@@ -0,0 +1,208 @@
+package frc.robot.utilities;
+
+import com.kauailabs.navx.AHRSProtocol.AHRSUpdateBase;
+import com.kauailabs.navx.frc.AHRS;
+import com.kauailabs.navx.frc.ITimestampedDataSubscriber;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.SPI;
+
+import frc.robot.utilities.constants.Constants;
+
+/**
+ * Owns the NavX and records every sample it sends instead of polling it several times a loop. The NavX pushes
+ * updates at its fastest rate on its own thread, each one is stored with the time it was taken, so the yaw the
+ * odometry uses, the yaw rate the heading controller damps with and the yaw at a vision frame's capture time all
+ * come from real samples instead of whatever the last poll happened to return.
+ *
+ * <p>Yaw is unwrapped (it keeps counting past 180) and zeroed here in software, and everything returned uses the
+ * robot's convention from {@link frc.robot.subsystems.SwerveSubsystem#getYawRotation2d()}.
+ */
+public class GyroService implements ITimestampedDataSubscriber {
+    private static GyroService instance;
+
+    public static GyroService getInstance() {
+        if (instance == null) instance = new GyroService();
+        return instance;
+    }
+
+    private static final int bufferSize = 256; // Samples kept, a little over a second at 200Hz
+    private static final int yawRateSamples = 4; // Yaw rate is the slope across this many samples, smooths out the NavX's quantization
+
+    /* The NavX measures clockwise positive, this turns it into the robot's yaw convention */
+    private static final double yawSign = (Constants.SwerveConstants.gyroInverted ? -1.0 : 1.0) * (Constants.SwerveConstants.swerveEncoderInverted ? 1.0 : -1.0);
+
+    private final AHRS gyro;
+
+    /* Ring buffer of samples, written from the NavX thread and read from the main loop */
+    private final double[] timestamps = new double[bufferSize]; // FPGA seconds
+    private final double[] yaws = new double[bufferSize]; // Unwrapped NavX degrees
+    private final double[] pitches = new double[bufferSize]; // Degrees
+    private final double[] rolls = new double[bufferSize]; // Degrees
+    private int newest = -1;
+    private long sampleCount = 0;
+
+    private double yawOffset = 0.0; // Unwrapped NavX degrees that count as zero
+    private double lastRawYaw = Double.NaN;
+    private double unwrappedYaw = 0.0;
+
+    /* Every sample is logged from the NavX thread at its own timestamp, the log is safe to append to from any thread */
+    private final DoubleLogEntry yawLog;
+    private final DoubleLogEntry pitchLog;
+    private final DoubleLogEntry rollLog;
+
+    private GyroService() {
+        yawLog = new DoubleLogEntry(RobotLogger.getInstance().getLog(), "Gyro/YawDegrees");
+        pitchLog = new DoubleLogEntry(RobotLogger.getInstance().getLog(), "Gyro/PitchDegrees");
+        rollLog = new DoubleLogEntry(RobotLogger.getInstance().getLog(), "Gyro/RollDegrees");
+        RobotLogger.getInstance().addDouble("Gyro/YawRate", this::getYawRate);
+
+        gyro = new AHRS(SPI.Port.kMXP, (byte) Constants.CANBusConstants.navXUpdateRateHz);
+        gyro.registerCallback(this, null);
+    }
+
+    @Override
+    public void timestampedDataReceived(long systemTimestamp, long sensorTimestamp, AHRSUpdateBase sensorData, Object context) {
+        synchronized (this) {
+            // The NavX wraps yaw at +-180, keep counting through the wrap so differences and interpolation work
+            if (Double.isNaN(lastRawYaw)) {
+                unwrappedYaw = sensorData.yaw;
+            } else {
+                unwrappedYaw += MathUtil.inputModulus(sensorData.yaw - lastRawYaw, -180.0, 180.0);
+            }
+            lastRawYaw = sensorData.yaw;
+
+            newest = (newest + 1) % bufferSize;
+            timestamps[newest] = systemTimestamp / 1000.0; // The NavX library stamps samples with FPGA milliseconds
+            yaws[newest] = unwrappedYaw;
+            pitches[newest] = sensorData.pitch;
+            rolls[newest] = sensorData.roll;
+            sampleCount++;
+
+            long timestampMicroseconds = systemTimestamp * 1000;
+            yawLog.append(yawSign * (unwrappedYaw - yawOffset), timestampMicroseconds);
+            pitchLog.append(sensorData.pitch, timestampMicroseconds);
+            rollLog.append(sensorData.roll, timestampMicroseconds);
+        }
+    }
+
+    private int index(int samplesBack) {
+        return Math.floorMod(newest - samplesBack, bufferSize);
+    }
+
+    private int bufferedSamples() {
+        return (int) Math.min(sampleCount, bufferSize);
+    }
+
+    /** Returns the latest yaw, unwrapped, in radians */
+    public synchronized double getYawRadians() {
+        if (newest < 0) {
+            return 0.0;
+        }
+
+        return Units.degreesToRadians(yawSign * (yaws[newest] - yawOffset));
+    }
+
+    /** Returns the latest yaw, wrapped to +-180 degrees */
+    public Rotation2d getYaw() {
+        return new Rotation2d(MathUtil.angleModulus(getYawRadians()));
+    }
+
+    /**
+    * Returns the yaw when a measurement was taken, interpolated between the samples around it.
+    *
+    * @param timestampSeconds The FPGA time the measurement was taken.
+    * @return The yaw at that time wrapped to +-180 degrees, the oldest or newest sample's if the time is outside the buffer.
+    */
+    public synchronized Rotation2d getYawAt(double timestampSeconds) {
+        if (newest < 0) {
+            return new Rotation2d();
+        }
+
+        int samples = bufferedSamples();
+        for (int back = 0; back < samples - 1; back++) {
+            int later = index(back);
+            int earlier = index(back + 1);
+
+            if (timestamps[earlier] <= timestampSeconds) {
+                double span = timestamps[later] - timestamps[earlier];
+                double fraction = (span > 0.0) ? MathUtil.clamp((timestampSeconds - timestamps[earlier]) / span, 0.0, 1.0) : 1.0;
+                double yaw = MathUtil.interpolate(yaws[earlier], yaws[later], fraction);
+                return new Rotation2d(MathUtil.angleModulus(Units.degreesToRadians(yawSign * (yaw - yawOffset))));
+            }
+        }
+
+        return new Rotation2d(MathUtil.angleModulus(Units.degreesToRadians(yawSign * (yaws[index(samples - 1)] - yawOffset))));
+    }
+
+    /** Returns how fast the robot is turning from the latest samples, in radians per second */
+    public synchronized double getYawRate() {
+        return getYawRateEndingAt(0);
+    }
+
+    /**
+    * Returns how fast the robot was turning when a measurement was taken.
+    *
+    * @param timestampSeconds The FPGA time the measurement was taken.
+    * @return The yaw rate in radians per second.
+    */
+    public synchronized double getYawRateAt(double timestampSeconds) {
+        int samples = bufferedSamples();
+        for (int back = 0; back < samples; back++) {
+            if (timestamps[index(back)] <= timestampSeconds) {
+                return getYawRateEndingAt(back);
+            }
+        }
+
+        return getYawRateEndingAt(Math.max(0, samples - 1));
+    }
+
+    private double getYawRateEndingAt(int back) {
+        int span = Math.min(yawRateSamples, bufferedSamples() - 1 - back);
+        if (newest < 0 || span <= 0) {
+            return 0.0;
+        }
+
+        int later = index(back);
+        int earlier = index(back + span);
+        double seconds = timestamps[later] - timestamps[earlier];
+        if (seconds <= 0.0) {
+            return 0.0;
+        }
+
+        return Units.degreesToRadians(yawSign * (yaws[later] - yaws[earlier]) / seconds);
+    }
+
+    /** Returns the latest pitch in degrees */
+    public synchronized double getPitch() {
+        return (newest < 0) ? 0.0 : pitches[newest];
+    }
+
+    /** Returns the latest roll in degrees */
+    public synchronized double getRoll() {
+        return (newest < 0) ? 0.0 : rolls[newest];
+    }
+
+    /** Returns the NavX's own yaw, clockwise positive in degrees and wrapped to +-180, relative to the last zero */
+    public synchronized double getRawYaw() {
+        return (newest < 0) ? 0.0 : MathUtil.inputModulus(yaws[newest] - yawOffset, -180.0, 180.0);
+    }
+
+    /** Returns the FPGA time of the latest sample in seconds, 0 if none arrived yet */
+    public synchronized double getLastSampleTimestamp() {
+        return (newest < 0) ? 0.0 : timestamps[newest];
+    }
+
+    /** Returns how many samples have arrived since startup, changes with every sample so it works as a health probe */
+    public synchronized double getSampleCount() {
+        return sampleCount;
+    }
+
+    /** Makes the current heading zero */
+    public synchronized void zeroYaw() {
+        yawOffset = (newest < 0) ? 0.0 : yaws[newest];
+    }
+}
@@ -0,0 +1,92 @@
+package frc.robot.utilities;
+
+import edu.wpi.first.math.system.plant.DCMotor;
+
+import frc.robot.utilities.constants.Constants.ThermalConstants;
+
+/**
+ * Estimates a motor's winding temperature with two thermal masses: the windings, heated by the current squared
+ * times their resistance, and the motor's case, which the windings heat and which loses heat to the air. The
+ * temperature the motor controller reports comes from the case side and lags the windings, so it's used to correct
+ * the case estimate (and shift the windings with it) rather than being trusted on its own. Because the windings
+ * respond much faster than the case, the case is treated as constant over the prediction horizon, which gives the
+ * winding temperature at the end of the horizon, and the highest current that keeps it under the limit, in closed form.
+ */
+public class MotorThermalModel {
+    private final double windingResistance; // Ohms
+    private final double windingTimeConstant; // Seconds
+
+    private double windingTemperature = ThermalConstants.ambientCelsius;
+    private double caseTemperature = ThermalConstants.ambientCelsius;
+    private boolean initialized = false;
+    private double lastCurrent = 0.0;
+
+    public MotorThermalModel(DCMotor motor) {
+        windingResistance = motor.rOhms;
+        windingTimeConstant = ThermalConstants.windingHeatCapacity * ThermalConstants.windingToCaseResistance;
+    }
+
+    /**
+    * Steps the model forward.
+    *
+    * @param dtSeconds Time since the last update.
+    * @param current The motor's current in amps.
+    * @param measuredCelsius The temperature the motor controller reports, 0 or less if it has none.
+    */
+    public void update(double dtSeconds, double current, double measuredCelsius) {
+        boolean hasMeasurement = measuredCelsius > 0.0;
+        if (!initialized) {
+            windingTemperature = caseTemperature = hasMeasurement ? measuredCelsius : ThermalConstants.ambientCelsius;
+            initialized = true;
+        }
+
+        lastCurrent = current;
+
+        double heating = current * current * windingResistance;
+        double windingToCase = (windingTemperature - caseTemperature) / ThermalConstants.windingToCaseResistance;
+        double caseToAmbient = (caseTemperature - ThermalConstants.ambientCelsius) / ThermalConstants.caseToAmbientResistance;
+
+        windingTemperature += dtSeconds * (heating - windingToCase) / ThermalConstants.windingHeatCapacity;
+        caseTemperature += dtSeconds * (windingToCase - caseToAmbient) / ThermalConstants.caseHeatCapacity;
+
+        // The sensor says how far off the whole model is (a warm pit, a motor that ran before boot), move both masses
+        if (hasMeasurement) {
+            double correction = ThermalConstants.measurementGain * (measuredCelsius - caseTemperature);
+            caseTemperature += correction;
+            windingTemperature += correction;
+        }
+    }
+
+    /** Returns the estimated winding temperature in Celsius */
+    public double getWindingTemperature() {
+        return windingTemperature;
+    }
+
+    /** Returns the estimated case temperature in Celsius */
+    public double getCaseTemperature() {
+        return caseTemperature;
+    }
+
+    /** Returns the winding temperature expected after a number of seconds at a constant current */
+    public double predictWindingTemperature(double current, double horizonSeconds) {
+        double decay = Math.exp(-horizonSeconds / windingTimeConstant);
+        double steadyState = caseTemperature + current * current * windingResistance * ThermalConstants.windingToCaseResistance;
+        return steadyState + (windingTemperature - steadyState) * decay;
+    }
+
+    /** Returns how far under the limit the windings are expected to be at the end of the horizon if the current stays as it is, negative if over */
+    public double getHeadroom() {
+        return ThermalConstants.windingLimitCelsius - predictWindingTemperature(lastCurrent, ThermalConstants.predictionHorizonSeconds);
+    }
+
+    /** Returns the highest constant current that keeps the windings under the limit to the end of the horizon, in amps */
+    public double getAllowedCurrent() {
+        double decay = Math.exp(-ThermalConstants.predictionHorizonSeconds / windingTimeConstant);
+        double allowedRise = ThermalConstants.windingLimitCelsius - caseTemperature - (windingTemperature - caseTemperature) * decay;
+        if (allowedRise <= 0.0) {
+            return 0.0;
+        }
+
+        return Math.sqrt(allowedRise / (windingResistance * ThermalConstants.windingToCaseResistance * (1.0 - decay)));
+    }
+}
@@ -0,0 +1,34 @@
+package frc.robot.utilities;
+
+import edu.wpi.first.math.Vector;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.WheelPositions;
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * A drivetrain that {@link PoseEstimator} can fuse with vision. The drivetrain builds the WPILib estimator for its
+ * own kinematics and feeds it the wheel positions and yaw it samples each loop, so the vision gating, logging and
+ * everything that reads the pose stay the same whichever drivetrain is on the robot.
+ *
+ * @param <T> The drivetrain's wheel positions, matching the estimator it builds.
+ */
+public interface OdometrySource<T extends WheelPositions<T>> {
+    /**
+    * Builds the pose estimator, seeded with the drivetrain's latest sample.
+    *
+    * @param initialPose Where the robot starts on the field.
+    * @param stateStdDevs How much to trust wheel odometry, x and y in meters and heading in radians.
+    * @param visionStdDevs How much to trust vision by default, x and y in meters and heading in radians.
+    * @return The estimator, only ever updated through {@link #updatePoseEstimator}.
+    */
+    edu.wpi.first.math.estimator.PoseEstimator<T> createPoseEstimator(Pose2d initialPose, Vector<N3> stateStdDevs, Vector<N3> visionStdDevs);
+
+    /** Adds the wheel positions and yaw sampled this loop to the estimator, unless the data was stale */
+    void updatePoseEstimator(edu.wpi.first.math.estimator.PoseEstimator<T> estimator);
+
+    /** Resets the drivetrain's own wheel odometry and the estimator to a pose */
+    void resetPoseEstimator(edu.wpi.first.math.estimator.PoseEstimator<T> estimator, Pose2d pose);
+
+    /** Returns the pose from wheel odometry alone, only for comparing against the estimate */
+    Pose2d getOdometryPose();
+}
@@ -1,14 +1,21 @@
 package frc.robot.utilities;
 
+import java.util.Optional;
+
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.Vector;
-import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.WheelPositions;
 import edu.wpi.first.math.numbers.*;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.networktables.GenericEntry;
+import edu.wpi.first.util.datalog.BooleanLogEntry;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.util.datalog.StructLogEntry;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import edu.wpi.first.wpilibj2.command.Command;
@@ -16,105 +23,183 @@ import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.utilities.constants.Constants;
 import frc.robot.utilities.constants.FieldConstants;
-import frc.robot.subsystems.SwerveSubsystem;
 import frc.robot.subsystems.VisionSubsystem;
 
 /** Reports our expected, desired, and actual poses to dashboards */
 public class PoseEstimator extends SubsystemBase {
   private static PoseEstimator instance;
+  private static OdometrySource<?> odometrySource;
 
   public static PoseEstimator getInstance() {
     if (instance == null) instance = new PoseEstimator();
     return instance;
   }
 
+  /** Sets the drivetrain the estimate runs off, RobotContainer calls this once before anything reads the pose */
+  public static void setOdometrySource(OdometrySource<?> drivetrain) {
+    odometrySource = drivetrain;
+  }
+
   // Constants.PoseConstants config;
   private Pose2d odometryPose = new Pose2d();
   private Pose2d estimatePose = new Pose2d();
 
-  private final SwerveDrivePoseEstimator poseEstimator;
-  private final SwerveSubsystem swerveSubsystem;
+  /* Keeps a drivetrain and the estimator it built together, so their wheel position types match */
+  private static class Odometry<T extends WheelPositions<T>> {
+    private final OdometrySource<T> drivetrain;
+    private final edu.wpi.first.math.estimator.PoseEstimator<T> estimator;
+
+    private Odometry(OdometrySource<T> drivetrain, Vector<N3> stateStdDevs, Vector<N3> visionStdDevs) {
+      this.drivetrain = drivetrain;
+      this.estimator = drivetrain.createPoseEstimator(drivetrain.getOdometryPose(), stateStdDevs, visionStdDevs);
+    }
+
+    private void update() {
+      drivetrain.updatePoseEstimator(estimator);
+    }
+
+    private void reset(Pose2d pose) {
+      drivetrain.resetPoseEstimator(estimator, pose);
+    }
+  }
+
+  /* Captures the drivetrain's wheel position type so the estimator it builds matches it */
+  private static <T extends WheelPositions<T>> Odometry<T> bind(OdometrySource<T> drivetrain, Vector<N3> stateStdDevs, Vector<N3> visionStdDevs) {
+    return new Odometry<>(drivetrain, stateStdDevs, visionStdDevs);
+  }
+
+  private final Odometry<?> odometry;
 
   private ShuffleboardTab tab = Shuffleboard.getTab("Odometry Data");
   private GenericEntry xPoseDiffEntry = tab.add("XOdom Diff", 0).getEntry();
   private GenericEntry yPoseDiffEntry = tab.add("YODom Diff", 0).getEntry();
   private GenericEntry totalDiffEntry = tab.add("totalDiff", 0).getEntry();
   private GenericEntry rToSpeaker = tab.add("Distance to Speaker", 0).getEntry();
+  private GenericEntry travelTimeToSpeaker = tab.add("Travel Time to Speaker", 0).getEntry();
   private GenericEntry aprilTagTelemEntry = tab.add("Has AprilTag Telemetry", false).getEntry();
+  private GenericEntry visionDistanceEntry = tab.add("Vision Mahalanobis Distance", 0).getEntry();
+  private GenericEntry visionStdDevEntry = tab.add("Vision XY Std Dev", 0).getEntry();
+  private GenericEntry visionRejectionsEntry = tab.add("Vision Rejections", 0).getEntry();
+
+  private final VisionGate visionGate = new VisionGate();
+  private double lastVisionTimestamp = 0.0;
+
+  // Every vision observation is logged at its capture time, accepted or not
+  private final StructLogEntry<Pose2d> visionPoseLog;
+  private final BooleanLogEntry visionAcceptedLog;
+  private final DoubleLogEntry visionTagCountLog;
+  private final DoubleLogEntry visionTagDistanceLog;
+  private final DoubleLogEntry visionMahalanobisLog;
+  private final DoubleLogEntry visionStdDevLog;
+  private final DoubleLogEntry visionLatencyLog;
 
   private PoseEstimator() {
     // config = new Constants.PoseConstants();
-    swerveSubsystem = new SwerveSubsystem();
-
-    // Maxswerve Version from MAXSwerve.java in core
-    poseEstimator = new SwerveDrivePoseEstimator(
-      Constants.SwerveConstants.SwerveKinematics,
-      swerveSubsystem.getYawRotation2d(),
-      swerveSubsystem.getSwerveModulePositions(),
-      swerveSubsystem.getPose(),
-      createStateStdDevs(
-        Constants.PoseConstants.kPositionStdDevX,
-        Constants.PoseConstants.kPositionStdDevY,
-        Constants.PoseConstants.kPositionStdDevTheta),
-      createVisionMeasurementStdDevs(
-        Constants.PoseConstants.kVisionStdDevX,
-        Constants.PoseConstants.kVisionStdDevY,
-        Constants.PoseConstants.kVisionStdDevTheta)
-    );
+    Vector<N3> stateStdDevs = createStateStdDevs(
+      Constants.PoseConstants.kPositionStdDevX,
+      Constants.PoseConstants.kPositionStdDevY,
+      Constants.PoseConstants.kPositionStdDevTheta);
+    Vector<N3> visionStdDevs = createVisionMeasurementStdDevs(
+      Constants.PoseConstants.kVisionStdDevX,
+      Constants.PoseConstants.kVisionStdDevY,
+      Constants.PoseConstants.kVisionStdDevTheta);
+
+    // Whichever drivetrain RobotContainer built, the tank practice base runs the same vision fusion off its own wheel odometry
+    if (odometrySource == null) {
+      throw new IllegalStateException("PoseEstimator needs a drivetrain, RobotContainer sets it before the pose is read");
+    }
+    odometry = bind(odometrySource, stateStdDevs, visionStdDevs);
+
+    RobotLogger logger = RobotLogger.getInstance();
+    DataLog log = logger.getLog();
+    visionPoseLog = StructLogEntry.create(log, "Vision/Pose", Pose2d.struct);
+    visionAcceptedLog = new BooleanLogEntry(log, "Vision/Accepted");
+    visionTagCountLog = new DoubleLogEntry(log, "Vision/TagCount");
+    visionTagDistanceLog = new DoubleLogEntry(log, "Vision/AverageTagDistance");
+    visionMahalanobisLog = new DoubleLogEntry(log, "Vision/MahalanobisDistance");
+    visionStdDevLog = new DoubleLogEntry(log, "Vision/StdDevXY");
+    visionLatencyLog = new DoubleLogEntry(log, "Vision/LatencyMilliseconds");
+
+    logger.addStruct("Pose/Estimate", Pose2d.struct, this::getPosition);
   }
 
   @Override
   public void periodic() {
+    long periodicStart = RobotLogger.now();
     updateOdometryEstimate(); // Updates using wheel encoder data only
-    // Updates using the vision estimate
-    Pose2d tempEstimatePose = VisionSubsystem.getInstance().visionBotPose();
-    if (Constants.VisionConstants.IS_LIMELIGHT_MODE && tempEstimatePose != null
-        && (tempEstimatePose.getX() > Constants.VisionConstants.VISION_X_MAX_CUTOFF || tempEstimatePose.getX() < Constants.VisionConstants.VISION_X_MIN_CUTOFF)) { // Limelight mode
-      if (isEstimateReady(tempEstimatePose)) { // Does making so many bot pose variables impact accuracy?
-        double currentTimestamp = VisionSubsystem.getInstance().getTimestampSeconds(VisionSubsystem.getInstance().getTotalLatency());
-        addVisionMeasurement(tempEstimatePose, currentTimestamp);
+    visionGate.updateOdometry(getPosition());
+
+    // Updates using the vision estimate, each new pose once, weighted by its quality and gated against the estimate
+    VisionSubsystem vision = VisionSubsystem.getInstance();
+    Pose2d tempEstimatePose = vision.visionBotPose();
+    double visionTimestamp = vision.getVisionTimestamp();
+
+    if ((Constants.VisionConstants.IS_LIMELIGHT_MODE || Constants.VisionConstants.IS_PHOTON_VISION_MODE) && tempEstimatePose != null
+        && visionTimestamp > lastVisionTimestamp && isEstimateReady(tempEstimatePose)) {
+      lastVisionTimestamp = visionTimestamp;
+
+      // Compare against the estimate turned back to the heading the gyro had when the frame was captured
+      GyroService gyro = GyroService.getInstance();
+      Rotation2d turnedSinceCapture = gyro.getYaw().minus(gyro.getYawAt(visionTimestamp));
+      Pose2d estimateAtCapture = new Pose2d(getPosition().getTranslation(), getPosition().getRotation().minus(turnedSinceCapture));
+
+      Optional<Vector<N3>> stdDevs = visionGate.evaluate(
+        tempEstimatePose,
+        estimateAtCapture,
+        vision.getVisionTagCount(),
+        vision.getVisionAverageTagDistance(),
+        vision.getVisionAmbiguity(),
+        gyro.getYawRateAt(visionTimestamp));
+
+      if (stdDevs.isPresent()) {
+        addVisionMeasurement(tempEstimatePose, visionTimestamp, stdDevs.get());
       }
-    }
-    // TODO Photonvision mode - Needs editing and filtering
-    if (Constants.VisionConstants.IS_PHOTON_VISION_MODE && tempEstimatePose != null
-        && (tempEstimatePose.getX() > Constants.VisionConstants.VISION_X_MAX_CUTOFF || tempEstimatePose.getX() < Constants.VisionConstants.VISION_X_MIN_CUTOFF)) { // Limelight mode
-      if (isEstimateReady(tempEstimatePose)) { // Does making so many bot pose variables impact accuracy?
-        double photonTimestamp = VisionSubsystem.getInstance().getPhotonTimestamp();
-        addVisionMeasurement(tempEstimatePose, photonTimestamp);
-        aprilTagTelemEntry.setBoolean(true);
-      }
-      else{
-        aprilTagTelemEntry.setBoolean(false);
-      }
-    }
 
-    //UNTESTED - ALWAYS SETS DRIVETRAIN ODOMETRY TO THE POSE-ESTIMATOR ODOMETRY
-    //NOT GREAT FOR ERROR CHECKING POSE ESTIMATOR! - SET TO FALSE
-    if (Constants.VisionConstants.VISION_OVERRIDE_ENABLED) {
-      swerveSubsystem.resetSwerveOdometry(getPosition());
+      long captureMicroseconds = (long) (visionTimestamp * 1e6);
+      visionPoseLog.append(tempEstimatePose, captureMicroseconds);
+      visionAcceptedLog.append(stdDevs.isPresent(), captureMicroseconds);
+      visionTagCountLog.append(vision.getVisionTagCount(), captureMicroseconds);
+      visionTagDistanceLog.append(vision.getVisionAverageTagDistance(), captureMicroseconds);
+      visionMahalanobisLog.append(visionGate.getLastMahalanobisDistance(), captureMicroseconds);
+      visionStdDevLog.append(visionGate.getLastStdDevs().get(0, 0), captureMicroseconds);
+      visionLatencyLog.append((Timer.getFPGATimestamp() - visionTimestamp) * 1000.0, captureMicroseconds); // Capture to use
+
+      aprilTagTelemEntry.setBoolean(stdDevs.isPresent());
+      if (Telemetry.isEnabled(Telemetry.Level.TUNING)) {
+        visionDistanceEntry.setDouble(visionGate.getLastMahalanobisDistance());
+        visionStdDevEntry.setDouble(visionGate.getLastStdDevs().get(0, 0));
+        visionRejectionsEntry.setDouble(visionGate.getConsecutiveRejections());
+      }
     }
 
     // Update for telemetry
     setEstimatedPose(getPosition());
-    setOdometryPose(swerveSubsystem.getPose());
-
-    double xDiff = estimatePose.getX() - odometryPose.getX();
-    double yDiff = estimatePose.getY() - odometryPose.getY();
+    setOdometryPose(odometry.drivetrain.getOdometryPose());
 
-    xPoseDiffEntry.setDouble(xDiff);
-    yPoseDiffEntry.setDouble(yDiff);
-    totalDiffEntry.setDouble(Math.sqrt(Math.pow(xDiff, 2) + Math.pow(yDiff, 2)));
+    // Wheel odometry is never corrected, so how far the estimate has moved away from it shows how much vision is correcting
+    if (Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+      double xDiff = estimatePose.getX() - odometryPose.getX();
+      double yDiff = estimatePose.getY() - odometryPose.getY();
 
-    double xAvg = (estimatePose.getX() + odometryPose.getX()) / 2;
-    double yAvg = (estimatePose.getY() + odometryPose.getY()) / 2;
-    swerveSubsystem.resetSwerveOdometry(new Pose2d(xAvg, yAvg, swerveSubsystem.getYawRotation2d()));
+      xPoseDiffEntry.setDouble(xDiff);
+      yPoseDiffEntry.setDouble(yDiff);
+      totalDiffEntry.setDouble(Math.sqrt(Math.pow(xDiff, 2) + Math.pow(yDiff, 2)));
+    }
 
     Translation2d currentTranslation = getPosition().getTranslation();
-    Pose2d targetCoordinate = Constants.DriverConstants.IS_ALLIANCE_BLUE ? FieldConstants.Coordinates.BLUE_SPEAKER : FieldConstants.Coordinates.RED_SPEAKER;;
+    Pose2d targetCoordinate = FieldConstants.Coordinates.forAlliance(FieldConstants.Coordinates.BLUE_SPEAKER, FieldConstants.Coordinates.RED_SPEAKER);
 
     double targetVectorLength = currentTranslation.getDistance(targetCoordinate.getTranslation());
     rToSpeaker.setDouble(targetVectorLength);
 
+    // Lookup in the precomputed flow field, no search is run here
+    if (Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+      FlowField.Goal speakerGoal = FieldConstants.Coordinates.isRedAlliance() ? FlowField.Goal.RED_SPEAKER : FlowField.Goal.BLUE_SPEAKER;
+      travelTimeToSpeaker.setDouble(FlowField.getInstance().getTravelTimeSeconds(speakerGoal, currentTranslation));
+    }
+
+    RobotLogger.getInstance().logTiming("PoseEstimator", periodicStart);
+
   }
   
   public Double getDistanceToPose(Translation2d pose) {
@@ -151,32 +236,37 @@ public class PoseEstimator extends SubsystemBase {
     estimatePose = pose;
   }
 
-  /** Updates the field relative position of the robot. */
+  /** Updates the field relative position of the robot from the wheel positions and yaw the drivetrain sampled this loop. */
   public void updateOdometryEstimate() {
-    poseEstimator.update(swerveSubsystem.getYawRotation2d(), swerveSubsystem.getSwerveModulePositions());
+    odometry.update();
   }
 
   /**
    * @see edu.wpi.first.math.estimator.PoseEstimator#addVisionMeasurement(Pose2d, double)
    */
   public void addVisionMeasurement(Pose2d visionRobotPoseMeters, double timestampSeconds) {
-    poseEstimator.addVisionMeasurement(visionRobotPoseMeters, timestampSeconds);
+    odometry.estimator.addVisionMeasurement(visionRobotPoseMeters, timestampSeconds);
+  }
+
+  /**
+   * @see edu.wpi.first.math.estimator.PoseEstimator#addVisionMeasurement(Pose2d, double, edu.wpi.first.math.Matrix)
+   */
+  public void addVisionMeasurement(Pose2d visionRobotPoseMeters, double timestampSeconds, Vector<N3> visionMeasurementStdDevs) {
+    odometry.estimator.addVisionMeasurement(visionRobotPoseMeters, timestampSeconds, visionMeasurementStdDevs);
   }
 
   /**
-   * Reset the pose estimator location and Drivetrain odometry - NEEDS TO BE TESTED
+   * Reset the pose estimator location, and the drivetrain odometry with it so the divergence starts from zero
    *
    * @param poseMeters
    */
   public void resetPoseEstimate(Pose2d poseMeters) {
-    swerveSubsystem.resetSwerveOdometry(poseMeters);
-    poseEstimator.resetPosition(swerveSubsystem.getYawRotation2d(), swerveSubsystem.getSwerveModulePositions(), swerveSubsystem.getPose());
-    
+    odometry.reset(poseMeters);
+    setEstimatedPose(poseMeters);
   }
 
   public void resetHeading(Rotation2d angle) {
-    swerveSubsystem.resetSwerveOdometry(new Pose2d(swerveSubsystem.getPose().getTranslation(), angle));
-    resetPoseEstimate(new Pose2d(estimatePose.getTranslation(), angle));
+    resetPoseEstimate(new Pose2d(getPosition().getTranslation(), angle));
   }
 
   public void resetLocationEstimate(Translation2d translation) {
@@ -190,7 +280,7 @@ public class PoseEstimator extends SubsystemBase {
    * @return The estimated robot pose in meters.
    */
   public Pose2d getPosition() {
-    return poseEstimator.getEstimatedPosition();
+    return odometry.estimator.getEstimatedPosition();
   }
 
   /**
@@ -0,0 +1,335 @@
+package frc.robot.utilities;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+import com.revrobotics.CANSparkMax;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+import frc.robot.utilities.constants.Constants.PowerConstants;
+import frc.robot.utilities.constants.Constants.ThermalConstants;
+import frc.robot.utilities.constants.CurrentBudget;
+
+/**
+ * Shares the battery's current between the mechanisms by moving their Spark Max smart current limits every loop,
+ * instead of each one having a fixed limit sized as if nothing else were running. The battery is modelled as an
+ * open circuit voltage behind a resistance, fit online with recursive least squares from the battery voltage and
+ * the total current {@link PowerSampler} measures at the power distribution, which gives how much current the robot can pull before the voltage drops to
+ * {@link PowerConstants#targetMinimumVoltage}. That budget goes to every motor's minimum first, then to the motors
+ * in use by priority up to their maximum, then to idle motors up to their nominal limit.
+ *
+ * <p>A motor's battery current is its duty cycle times its phase current, so a motor running slowly costs the
+ * budget less than its limit. The duty cycle is the output its mechanism commanded, the Spark Max's own applied
+ * output only arrives every 500 ms. Limits are lowered as soon as the budget shrinks but raised back slowly, and
+ * only sent to a motor when they change by a whole step since each one is a CAN parameter write, sent without
+ * waiting for the Spark Max to acknowledge it so the loop never blocks on the bus.
+ *
+ * <p>Each motor also has a {@link MotorThermalModel}, and its limit is capped at the current the model says it can
+ * carry without the windings passing {@link ThermalConstants#windingLimitCelsius} within the prediction horizon. The
+ * cap falls gradually as the motor heats up, so a motor run hard for a long time is eased back before it gets too hot
+ * rather than losing power all at once.
+ */
+public class PowerManager extends SubsystemBase {
+    private static PowerManager instance;
+
+    public static PowerManager getInstance() {
+        if (instance == null) instance = new PowerManager();
+        return instance;
+    }
+
+    private static class Motor {
+        private final String name;
+        private final CANSparkMax motor;
+        private final CurrentBudget budget;
+        private final DoubleSupplier commandedOutput;
+        private final MotorThermalModel thermal = new MotorThermalModel(ThermalConstants.motor);
+
+        private boolean active = false;
+        private double weight = 1.0; // Battery amps per amp of current limit this loop
+        private double allocation = 0.0; // Current limit being worked out this loop
+        private double thermalCap = Double.POSITIVE_INFINITY; // Highest limit the windings can take right now
+        private int appliedLimit = 0;
+        private double lastChangeTimestamp = Double.NEGATIVE_INFINITY;
+
+        private Motor(String name, CANSparkMax motor, CurrentBudget budget, DoubleSupplier commandedOutput) {
+            this.name = name;
+            this.motor = motor;
+            this.budget = budget;
+            this.commandedOutput = commandedOutput;
+        }
+
+        /* The budget's minimum, unless the motor is too hot for it */
+        private double minimum() {
+            return Math.min(budget.minAmps, thermalCap);
+        }
+    }
+
+    private final List<Motor> motors = new ArrayList<>(); // Kept sorted by priority
+
+    /* Battery fit, V = openCircuitVoltage - resistance * I, with the covariance of the two parameters */
+    private double openCircuitVoltage = PowerConstants.initialOpenCircuitVoltage;
+    private double resistance = PowerConstants.initialBatteryResistance;
+    private double p00 = 0.25; // Volts squared, the starting voltage is known to within about half a volt
+    private double p01 = 0.0;
+    private double p11 = 1e-4; // Ohms squared, the starting resistance is known to within about 10 milliohms
+    private double lastExcitedCurrent = 0.0;
+
+    private double voltage = PowerConstants.initialOpenCircuitVoltage;
+    private double totalCurrent = 0.0;
+    private double budgetAmps = PowerConstants.maxBudgetAmps;
+    private double lastTimestamp = Double.NaN;
+
+    private PowerManager() {
+        setName("PowerManager");
+
+        RobotLogger logger = RobotLogger.getInstance();
+        logger.addDouble("Power/OpenCircuitVoltage", this::getOpenCircuitVoltage);
+        logger.addDouble("Power/BatteryResistance", this::getBatteryResistance);
+        logger.addDouble("Power/TotalCurrent", this::getTotalCurrent);
+        logger.addDouble("Power/BudgetAmps", this::getBudgetAmps);
+    }
+
+    /**
+    * Adds a Spark Max to the budget and applies its nominal current limit.
+    *
+    * @param name The name its limit is logged under.
+    * @param motor The motor to manage the smart current limit of.
+    * @param budget Its priority and the range its limit can move in.
+    * @param commandedOutput The duty cycle (-1 to 1) the mechanism last commanded, 0 when it isn't being used. Closed
+    *                        loop motors pass their best estimate. Should only read cached values (no CAN traffic).
+    */
+    public void register(String name, CANSparkMax motor, CurrentBudget budget, DoubleSupplier commandedOutput) {
+        Motor registered = new Motor(name, motor, budget, commandedOutput);
+        motors.add(registered);
+        motors.sort(Comparator.comparingInt(entry -> entry.budget.priority));
+
+        // Registration happens while configuring the motor, where waiting for the write is fine
+        motor.setSmartCurrentLimit(budget.nominalAmps);
+        registered.appliedLimit = budget.nominalAmps;
+        registered.lastChangeTimestamp = Timer.getFPGATimestamp();
+        RobotLogger logger = RobotLogger.getInstance();
+        logger.addDouble("Power/Limit/" + name, () -> registered.appliedLimit);
+        logger.addDouble("Thermal/" + name + "/WindingTemperature", registered.thermal::getWindingTemperature);
+        logger.addDouble("Thermal/" + name + "/Headroom", registered.thermal::getHeadroom);
+        logger.addDouble("Thermal/" + name + "/Cap", () -> registered.thermalCap);
+    }
+
+    /* Sent from the main loop, so the write doesn't wait for the Spark Max to acknowledge it */
+    private void apply(Motor motor, int limit) {
+        motor.motor.setCANTimeout(0);
+        motor.motor.setSmartCurrentLimit(limit);
+        motor.motor.setCANTimeout(PowerConstants.sparkMaxCANTimeoutMs);
+        motor.appliedLimit = limit;
+        motor.lastChangeTimestamp = Timer.getFPGATimestamp();
+    }
+
+    /* One recursive least squares step, old samples are only forgotten when the current moved enough to say something about the resistance */
+    private void updateBatteryModel(double measuredVoltage, double current) {
+        double forgetting = 1.0;
+        if (Math.abs(current - lastExcitedCurrent) >= PowerConstants.resistanceExcitationAmps) {
+            forgetting = PowerConstants.resistanceForgettingFactor;
+            lastExcitedCurrent = current;
+        }
+
+        double phi0 = 1.0;
+        double phi1 = -current;
+
+        double pPhi0 = p00 * phi0 + p01 * phi1;
+        double pPhi1 = p01 * phi0 + p11 * phi1;
+        double denominator = forgetting + phi0 * pPhi0 + phi1 * pPhi1;
+        double k0 = pPhi0 / denominator;
+        double k1 = pPhi1 / denominator;
+
+        double error = measuredVoltage - (openCircuitVoltage * phi0 + resistance * phi1);
+        openCircuitVoltage += k0 * error;
+        resistance = MathUtil.clamp(resistance + k1 * error, PowerConstants.minBatteryResistance, PowerConstants.maxBatteryResistance);
+
+        p00 = (p00 - k0 * pPhi0) / forgetting;
+        p01 = (p01 - k0 * pPhi1) / forgetting;
+        p11 = (p11 - k1 * pPhi1) / forgetting;
+    }
+
+    private double computeBudget() {
+        double budget = (openCircuitVoltage - PowerConstants.targetMinimumVoltage) / resistance;
+
+        // Already below the target, the fit is behind, back off by what it takes to get the voltage back up
+        if (voltage < PowerConstants.targetMinimumVoltage) {
+            budget = Math.min(budget, totalCurrent - (PowerConstants.targetMinimumVoltage - voltage) / resistance);
+        }
+
+        return MathUtil.clamp(budget, 0.0, PowerConstants.maxBudgetAmps);
+    }
+
+    private void allocate(double batteryAmps) {
+        double remaining = batteryAmps;
+        for (Motor motor : motors) {
+            motor.allocation = motor.minimum();
+            remaining -= motor.weight * motor.allocation;
+        }
+
+        remaining = fillByPriority(remaining, true);
+        fillByPriority(remaining, false);
+    }
+
+    /* Gives each priority in turn as much as it can take, motors in use up to their maximum and idle motors up to their nominal limit */
+    private double fillByPriority(double remaining, boolean active) {
+        int index = 0;
+        while (index < motors.size() && remaining > 0.0) {
+            int priority = motors.get(index).budget.priority;
+            List<Motor> tier = new ArrayList<>();
+
+            while (index < motors.size() && motors.get(index).budget.priority == priority) {
+                Motor motor = motors.get(index);
+                if (motor.active == active) {
+                    tier.add(motor);
+                }
+                index++;
+            }
+
+            remaining = fillEvenly(tier, remaining, active);
+        }
+
+        return remaining;
+    }
+
+    /* Splits battery current evenly between motors of the same priority, what one can't take goes to the others */
+    private double fillEvenly(List<Motor> tier, double remaining, boolean active) {
+        List<Motor> open = new ArrayList<>(tier);
+
+        while (!open.isEmpty() && remaining > 1e-6) {
+            double share = remaining / open.size();
+            boolean anyFull = false;
+
+            for (int i = open.size() - 1; i >= 0; i--) {
+                Motor motor = open.get(i);
+                double target = Math.min(active ? motor.budget.maxAmps : motor.budget.nominalAmps, motor.thermalCap);
+                double headroom = Math.max(0.0, target - motor.allocation) * motor.weight;
+
+                double given = Math.min(share, headroom);
+                motor.allocation += given / motor.weight;
+                remaining -= given;
+
+                if (given >= headroom) {
+                    open.remove(i);
+                    anyFull = true;
+                }
+            }
+
+            if (!anyFull) {
+                break; // Everyone took a full share, nothing is left
+            }
+        }
+
+        return remaining;
+    }
+
+    private void applyAllocations() {
+        double now = Timer.getFPGATimestamp();
+
+        for (Motor motor : motors) {
+            int steps = (int) Math.floor(motor.allocation / PowerConstants.limitStepAmps);
+            int limit = Math.max((int) motor.minimum(), steps * PowerConstants.limitStepAmps);
+
+            if (limit < motor.appliedLimit || (limit > motor.appliedLimit && now - motor.lastChangeTimestamp >= PowerConstants.raisePeriodSeconds)) {
+                apply(motor, limit);
+            }
+        }
+    }
+
+    @Override
+    public void periodic() {
+        voltage = RobotController.getBatteryVoltage();
+
+        double now = Timer.getFPGATimestamp();
+        double dt = Double.isNaN(lastTimestamp) ? 0.0 : now - lastTimestamp;
+        lastTimestamp = now;
+
+        double motorCurrent = 0.0;
+        for (Motor motor : motors) {
+            double duty = Math.min(Math.abs(motor.commandedOutput.getAsDouble()), 1.0);
+            double phaseCurrent = motor.motor.getOutputCurrent();
+            motor.weight = Math.max(duty, PowerConstants.minDutyWeight);
+            motor.active = duty != 0.0;
+            motorCurrent += duty * phaseCurrent;
+
+            // The windings heat with the phase current, not the battery current
+            motor.thermal.update(dt, phaseCurrent, motor.motor.getMotorTemperature());
+            motor.thermalCap = Math.max(ThermalConstants.minimumAmps, motor.thermal.getAllowedCurrent());
+        }
+
+        // The power distribution measures everything, the motors' own estimate is only used until it has a reading
+        PowerSampler sampler = PowerSampler.getInstance();
+        totalCurrent = sampler.hasSamples() ? sampler.getLatestTotalCurrent() : motorCurrent + PowerConstants.baseLoadAmps;
+
+        updateBatteryModel(voltage, totalCurrent);
+        budgetAmps = computeBudget();
+        allocate(budgetAmps - PowerConstants.baseLoadAmps);
+        applyAllocations();
+
+        if (!Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+            return;
+        }
+
+        SmartDashboard.putNumber("Battery Open Circuit Voltage", openCircuitVoltage);
+        SmartDashboard.putNumber("Battery Resistance Milliohms", resistance * 1000.0);
+        SmartDashboard.putNumber("Estimated Total Current", totalCurrent);
+        SmartDashboard.putNumber("Current Budget", budgetAmps);
+        for (Motor motor : motors) {
+            SmartDashboard.putNumber(motor.name + " Thermal Headroom", motor.thermal.getHeadroom());
+        }
+    }
+
+    /** Returns the battery voltage with no load, from the fit */
+    public double getOpenCircuitVoltage() {
+        return openCircuitVoltage;
+    }
+
+    /** Returns the resistance of the battery and wiring in ohms, from the fit */
+    public double getBatteryResistance() {
+        return resistance;
+    }
+
+    /** Returns the battery voltage the fit expects at a total current */
+    public double getPredictedVoltage(double totalAmps) {
+        return openCircuitVoltage - resistance * totalAmps;
+    }
+
+    /** Returns the current drawn from the battery this loop, in amps */
+    public double getTotalCurrent() {
+        return totalCurrent;
+    }
+
+    /** Returns the total current the robot can draw before the battery drops to the target minimum voltage */
+    public double getBudgetAmps() {
+        return budgetAmps;
+    }
+
+    /** Returns the smart current limit currently applied to a motor, or 0 if the motor isn't registered */
+    public int getAppliedLimit(CANSparkMax motor) {
+        for (Motor registered : motors) {
+            if (registered.motor == motor) {
+                return registered.appliedLimit;
+            }
+        }
+
+        return 0;
+    }
+
+    /** Returns how many degrees under the winding limit a motor is expected to stay over the prediction horizon, or NaN if the motor isn't registered */
+    public double getThermalHeadroom(CANSparkMax motor) {
+        for (Motor registered : motors) {
+            if (registered.motor == motor) {
+                return registered.thermal.getHeadroom();
+            }
+        }
+
+        return Double.NaN;
+    }
+}
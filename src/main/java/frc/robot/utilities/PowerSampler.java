@@ -0,0 +1,256 @@
+package frc.robot.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.wpi.first.util.datalog.StringLogEntry;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.PowerDistribution;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+import frc.robot.utilities.constants.Constants.PowerDistributionConstants;
+import frc.robot.utilities.constants.PowerChannel;
+
+/**
+ * Reads every power distribution channel's current on its own thread, faster than the main loop, into a ring
+ * buffer of primitive arrays. Channels are grouped into mechanisms with {@link PowerDistributionConstants#channels},
+ * and while the robot is enabled each mechanism's energy (battery voltage times current, integrated over the real
+ * time between samples) and peak current are added up. The totals are reset when autonomous starts and printed when
+ * the robot is disabled, so every match gets its own report of which mechanisms use the most power and how close
+ * they come to their current limits.
+ */
+public class PowerSampler extends SubsystemBase {
+    private static PowerSampler instance;
+
+    public static PowerSampler getInstance() {
+        if (instance == null) instance = new PowerSampler();
+        return instance;
+    }
+
+    private final PowerDistribution powerDistribution;
+    private final Notifier notifier;
+    private final int channelCount;
+    private final int capacity;
+
+    /* Ring buffer, written from the notifier thread and read from the main loop */
+    private final double[] timestamps; // FPGA seconds
+    private final double[] voltages;
+    private final double[] currents; // channelCount currents per sample, one sample after another
+    private final double[] totalCurrents;
+    private int newest = -1;
+    private long sampleCount = 0;
+
+    /* Per mechanism accounting, indexed like mechanismNames */
+    private final List<String> mechanismNames = new ArrayList<>();
+    private final int[] channelMechanisms; // Mechanism index of each channel, -1 if it isn't mapped
+    private final double[] mechanismCurrents; // Scratch space for one sample
+    private final double[] energyJoules;
+    private final double[] peakAmps;
+    private double totalEnergyJoules = 0.0;
+    private double peakTotalAmps = 0.0;
+    private double enabledSeconds = 0.0;
+    private double lastSampleTimestamp = Double.NaN;
+
+    private final StringLogEntry reportEntry;
+
+    private PowerSampler() {
+        setName("PowerSampler");
+
+        powerDistribution = new PowerDistribution(PowerDistributionConstants.module, PowerDistributionConstants.moduleType);
+        channelCount = powerDistribution.getNumChannels();
+        capacity = (int) Math.ceil(PowerDistributionConstants.historySeconds / PowerDistributionConstants.samplePeriodSeconds);
+
+        timestamps = new double[capacity];
+        voltages = new double[capacity];
+        currents = new double[capacity * channelCount];
+        totalCurrents = new double[capacity];
+
+        channelMechanisms = new int[channelCount];
+        Arrays.fill(channelMechanisms, -1);
+        for (PowerChannel channel : PowerDistributionConstants.channels) {
+            if (channel.channel < 0 || channel.channel >= channelCount) {
+                DriverStation.reportWarning("Power channel " + channel.channel + " doesn't exist on this power distribution", false);
+                continue;
+            }
+
+            if (!mechanismNames.contains(channel.mechanism)) {
+                mechanismNames.add(channel.mechanism);
+            }
+            channelMechanisms[channel.channel] = mechanismNames.indexOf(channel.mechanism);
+        }
+
+        mechanismCurrents = new double[mechanismNames.size()];
+        energyJoules = new double[mechanismNames.size()];
+        peakAmps = new double[mechanismNames.size()];
+
+        RobotLogger logger = RobotLogger.getInstance();
+        for (String mechanism : mechanismNames) {
+            logger.addDouble("Power/Energy/" + mechanism, () -> getEnergyJoules(mechanism));
+            logger.addDouble("Power/Peak/" + mechanism, () -> getPeakCurrent(mechanism));
+        }
+        logger.addDouble("Power/MeasuredTotalCurrent", this::getLatestTotalCurrent);
+        reportEntry = new StringLogEntry(logger.getLog(), "Power/MatchReport");
+
+        notifier = new Notifier(this::sample);
+        notifier.setName("PowerSampler");
+        notifier.startPeriodic(PowerDistributionConstants.samplePeriodSeconds);
+    }
+
+    private void sample() {
+        double timestamp = Timer.getFPGATimestamp();
+        double voltage = powerDistribution.getVoltage();
+        double[] channelCurrents = powerDistribution.getAllCurrents();
+        boolean enabled = DriverStation.isEnabled();
+
+        synchronized (this) {
+            newest = (newest + 1) % capacity;
+            timestamps[newest] = timestamp;
+            voltages[newest] = voltage;
+
+            double total = 0.0;
+            int channels = Math.min(channelCount, channelCurrents.length);
+            System.arraycopy(channelCurrents, 0, currents, newest * channelCount, channels);
+            for (int channel = 0; channel < channels; channel++) {
+                total += channelCurrents[channel];
+            }
+            totalCurrents[newest] = total;
+            sampleCount++;
+
+            double dt = Double.isNaN(lastSampleTimestamp) ? 0.0 : timestamp - lastSampleTimestamp;
+            lastSampleTimestamp = timestamp;
+            if (!enabled) {
+                return;
+            }
+
+            Arrays.fill(mechanismCurrents, 0.0);
+            for (int channel = 0; channel < channels; channel++) {
+                int mechanism = channelMechanisms[channel];
+                if (mechanism >= 0) {
+                    mechanismCurrents[mechanism] += channelCurrents[channel];
+                }
+            }
+
+            for (int mechanism = 0; mechanism < mechanismCurrents.length; mechanism++) {
+                energyJoules[mechanism] += voltage * mechanismCurrents[mechanism] * dt;
+                peakAmps[mechanism] = Math.max(peakAmps[mechanism], mechanismCurrents[mechanism]);
+            }
+
+            totalEnergyJoules += voltage * total * dt;
+            peakTotalAmps = Math.max(peakTotalAmps, total);
+            enabledSeconds += dt;
+        }
+    }
+
+    /** Returns whether any samples have been read yet */
+    public synchronized boolean hasSamples() {
+        return sampleCount > 0;
+    }
+
+    /** Returns the sum of every channel's current in the latest sample, in amps */
+    public synchronized double getLatestTotalCurrent() {
+        return (newest < 0) ? 0.0 : totalCurrents[newest];
+    }
+
+    /** Returns the power distribution's input voltage in the latest sample */
+    public synchronized double getLatestVoltage() {
+        return (newest < 0) ? 0.0 : voltages[newest];
+    }
+
+    /** Returns a channel's current in the latest sample, in amps */
+    public synchronized double getLatestCurrent(int channel) {
+        return (newest < 0 || channel < 0 || channel >= channelCount) ? 0.0 : currents[newest * channelCount + channel];
+    }
+
+    /**
+    * Returns a mechanism's average current over the buffered samples from the last few seconds.
+    *
+    * @param mechanism The mechanism name from {@link PowerDistributionConstants#channels}.
+    * @param seconds How far back to average, limited by {@link PowerDistributionConstants#historySeconds}.
+    * @return The average current in amps, 0 if the mechanism isn't mapped or nothing was sampled.
+    */
+    public synchronized double getAverageCurrent(String mechanism, double seconds) {
+        int index = mechanismNames.indexOf(mechanism);
+        if (index < 0 || newest < 0) {
+            return 0.0;
+        }
+
+        double cutoff = timestamps[newest] - seconds;
+        double sum = 0.0;
+        int samples = 0;
+
+        for (int back = 0; back < Math.min(sampleCount, capacity); back++) {
+            int sample = Math.floorMod(newest - back, capacity);
+            if (timestamps[sample] < cutoff) {
+                break;
+            }
+
+            for (int channel = 0; channel < channelCount; channel++) {
+                if (channelMechanisms[channel] == index) {
+                    sum += currents[sample * channelCount + channel];
+                }
+            }
+            samples++;
+        }
+
+        return (samples == 0) ? 0.0 : sum / samples;
+    }
+
+    /** Returns the energy a mechanism has used while enabled since the match started, in joules */
+    public synchronized double getEnergyJoules(String mechanism) {
+        int index = mechanismNames.indexOf(mechanism);
+        return (index < 0) ? 0.0 : energyJoules[index];
+    }
+
+    /** Returns the highest current a mechanism has drawn while enabled since the match started, in amps */
+    public synchronized double getPeakCurrent(String mechanism) {
+        int index = mechanismNames.indexOf(mechanism);
+        return (index < 0) ? 0.0 : peakAmps[index];
+    }
+
+    /** Starts a new match's energy and peak totals, call when autonomous starts */
+    public synchronized void resetMatch() {
+        Arrays.fill(energyJoules, 0.0);
+        Arrays.fill(peakAmps, 0.0);
+        totalEnergyJoules = 0.0;
+        peakTotalAmps = 0.0;
+        enabledSeconds = 0.0;
+    }
+
+    /** Logs and reports to the Driver Station every mechanism's energy, average and peak current since the match started, call when the robot is disabled */
+    public synchronized void reportMatch() {
+        if (enabledSeconds <= 0.0) {
+            return;
+        }
+
+        StringBuilder report = new StringBuilder(String.format("Power over %.1f s enabled: %.0f J, peak %.0f A%n", enabledSeconds, totalEnergyJoules, peakTotalAmps));
+        for (int mechanism = 0; mechanism < mechanismNames.size(); mechanism++) {
+            double averageWatts = energyJoules[mechanism] / enabledSeconds;
+            report.append(String.format("  %-10s %8.0f J %7.1f W average %6.1f A peak (%.0f%% of the energy)%n",
+                mechanismNames.get(mechanism),
+                energyJoules[mechanism],
+                averageWatts,
+                peakAmps[mechanism],
+                (totalEnergyJoules > 0.0) ? 100.0 * energyJoules[mechanism] / totalEnergyJoules : 0.0));
+        }
+
+        reportEntry.append(report.toString());
+        DriverStation.reportWarning(report.toString(), false);
+    }
+
+    @Override
+    public void periodic() {
+        if (!Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+            return;
+        }
+
+        SmartDashboard.putNumber("Measured Total Current", getLatestTotalCurrent());
+        for (String mechanism : mechanismNames) {
+            SmartDashboard.putNumber(mechanism + " Energy Joules", getEnergyJoules(mechanism));
+            SmartDashboard.putNumber(mechanism + " Peak Current", getPeakCurrent(mechanism));
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package frc.robot.utilities;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.util.datalog.BooleanLogEntry;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.util.datalog.StringLogEntry;
+import edu.wpi.first.util.datalog.StructArrayLogEntry;
+import edu.wpi.first.util.datalog.StructLogEntry;
+import edu.wpi.first.util.struct.Struct;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+import frc.robot.utilities.constants.Constants.LoggingConstants;
+
+/**
+ * Logs every registered input and output to the on-robot data log once per loop, as typed entries (structs for
+ * poses and module states) so they open directly in AdvantageScope. Subsystems register what to log when they're
+ * built and the logger samples all of it after the scheduler runs, with one timestamp for the whole loop.
+ *
+ * <p>The main loop only appends: DataLog copies each record into its buffers and a background thread writes
+ * them to disk in batches. Numbers and booleans are only written when they change, which keeps the file small
+ * while disabled. Old log files past {@link LoggingConstants#maxLogFiles} are deleted at startup so the disk
+ * never fills up, and the time logging takes each loop is itself logged against a budget.
+ *
+ * <p>There is no rotation while the robot runs: every entry, here and in the subsystems that hold their own, is
+ * bound to the one DataLog for the whole run, and WPILib's DataLog can't switch files under them. A boot is one
+ * file, bounded by deleting old ones at startup. A warning is reported once the current file grows past
+ * {@link LoggingConstants#maxLogFileBytes}, so a long practice session shows when the robot should be restarted.
+ * The size is checked on its own Notifier, listing the log directory never runs in the main loop.
+ */
+public class RobotLogger {
+    private static RobotLogger instance;
+
+    public static RobotLogger getInstance() {
+        if (instance == null) instance = new RobotLogger();
+        return instance;
+    }
+
+    /** Something sampled and appended once per loop */
+    private interface Sample {
+        void append(long timestamp);
+    }
+
+    private final DataLog log;
+    private final List<Sample> samples = new ArrayList<>();
+
+    private final DoubleLogEntry loggerTimeEntry;
+    private final DoubleLogEntry loopPeriodEntry;
+    private final Map<String, DoubleLogEntry> timingEntries = new HashMap<>();
+    private long lastTimestamp = 0;
+    private boolean overBudgetReported = false;
+    private final Notifier sizeCheckNotifier;
+
+    private RobotLogger() {
+        log = DataLogManager.getLog();
+        loggerTimeEntry = new DoubleLogEntry(log, "Logger/LoopMilliseconds");
+        loopPeriodEntry = new DoubleLogEntry(log, "Logger/LoopPeriodMilliseconds");
+
+        StringLogEntry commandStarted = new StringLogEntry(log, "Commands/Started");
+        StringLogEntry commandFinished = new StringLogEntry(log, "Commands/Finished");
+        StringLogEntry commandInterrupted = new StringLogEntry(log, "Commands/Interrupted");
+
+        CommandScheduler.getInstance().onCommandInitialize(command -> commandStarted.append(command.getName()));
+        CommandScheduler.getInstance().onCommandFinish(command -> commandFinished.append(command.getName()));
+        CommandScheduler.getInstance().onCommandInterrupt(command -> commandInterrupted.append(command.getName()));
+
+        deleteOldLogs();
+
+        sizeCheckNotifier = new Notifier(this::checkLogSize);
+        sizeCheckNotifier.setName("RobotLoggerSizeCheck");
+        sizeCheckNotifier.startPeriodic(LoggingConstants.sizeCheckPeriodSeconds);
+    }
+
+    /* DataLogManager only cleans up when the disk is nearly full, keep a fixed number of files instead */
+    private void deleteOldLogs() {
+        File[] logs = new File(DataLogManager.getLogDir()).listFiles((dir, name) -> name.endsWith(".wpilog"));
+        if (logs == null || logs.length <= LoggingConstants.maxLogFiles) {
+            return;
+        }
+
+        Arrays.sort(logs, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < logs.length - LoggingConstants.maxLogFiles; i++) {
+            if (!logs[i].delete()) {
+                DriverStation.reportWarning("Failed to delete old log " + logs[i].getName(), false);
+            }
+        }
+    }
+
+    /** Returns the data log, for entries that are written when something happens instead of every loop */
+    public DataLog getLog() {
+        return log;
+    }
+
+    /**
+    * Logs a number every loop it changes.
+    *
+    * @param name The entry name, "Subsystem/Value".
+    * @param supplier Reads the value, should only read cached values (no CAN traffic).
+    */
+    public void addDouble(String name, DoubleSupplier supplier) {
+        DoubleLogEntry entry = new DoubleLogEntry(log, name);
+        samples.add(new Sample() {
+            private double last = Double.NaN;
+
+            @Override
+            public void append(long timestamp) {
+                double value = supplier.getAsDouble();
+                if (Double.doubleToLongBits(value) != Double.doubleToLongBits(last)) {
+                    entry.append(value, timestamp);
+                    last = value;
+                }
+            }
+        });
+    }
+
+    /**
+    * Logs a boolean every loop it changes.
+    *
+    * @param name The entry name, "Subsystem/Value".
+    * @param supplier Reads the value, should only read cached values (no CAN traffic).
+    */
+    public void addBoolean(String name, BooleanSupplier supplier) {
+        BooleanLogEntry entry = new BooleanLogEntry(log, name);
+        samples.add(new Sample() {
+            private boolean first = true;
+            private boolean last;
+
+            @Override
+            public void append(long timestamp) {
+                boolean value = supplier.getAsBoolean();
+                if (first || value != last) {
+                    entry.append(value, timestamp);
+                    first = false;
+                    last = value;
+                }
+            }
+        });
+    }
+
+    /**
+    * Logs a struct (Pose2d.struct, SwerveModuleState.struct, ...) every loop.
+    *
+    * @param name The entry name, "Subsystem/Value".
+    * @param struct The struct type of the value.
+    * @param supplier Reads the value, should only read cached values (no CAN traffic).
+    */
+    public <T> void addStruct(String name, Struct<T> struct, Supplier<T> supplier) {
+        StructLogEntry<T> entry = StructLogEntry.create(log, name, struct);
+        samples.add(timestamp -> entry.append(supplier.get(), timestamp));
+    }
+
+    /**
+    * Logs an array of structs every loop.
+    *
+    * @param name The entry name, "Subsystem/Value".
+    * @param struct The struct type of the array's elements.
+    * @param supplier Reads the values, should only read cached values (no CAN traffic).
+    */
+    public <T> void addStructArray(String name, Struct<T> struct, Supplier<T[]> supplier) {
+        StructArrayLogEntry<T> entry = StructArrayLogEntry.create(log, name, struct);
+        samples.add(timestamp -> entry.append(supplier.get(), timestamp));
+    }
+
+    /** Returns the current time in microseconds, to pass to {@link #logTiming(String, long)} */
+    public static long now() {
+        return WPIUtilJNI.now();
+    }
+
+    /**
+    * Logs how long part of the loop took, under "Timing/name" in milliseconds.
+    *
+    * @param name What was timed, usually a subsystem.
+    * @param startMicroseconds When it started, from {@link #now()}.
+    */
+    public void logTiming(String name, long startMicroseconds) {
+        long timestamp = WPIUtilJNI.now();
+
+        DoubleLogEntry entry = timingEntries.get(name);
+        if (entry == null) {
+            entry = new DoubleLogEntry(log, "Timing/" + name);
+            timingEntries.put(name, entry);
+        }
+
+        entry.append((timestamp - startMicroseconds) / 1000.0, timestamp);
+    }
+
+    /** Samples and appends everything registered, call once per loop after the scheduler has run */
+    public void log() {
+        long timestamp = WPIUtilJNI.now();
+
+        // Time between loops, longer than the robot's period means the last loop overran
+        if (lastTimestamp != 0) {
+            loopPeriodEntry.append((timestamp - lastTimestamp) / 1000.0, timestamp);
+        }
+        lastTimestamp = timestamp;
+
+        for (Sample sample : samples) {
+            sample.append(timestamp);
+        }
+
+        double elapsedSeconds = (WPIUtilJNI.now() - timestamp) / 1e6;
+        loggerTimeEntry.append(elapsedSeconds * 1000.0, timestamp);
+
+        if (elapsedSeconds > LoggingConstants.loopBudgetSeconds && !overBudgetReported) {
+            DriverStation.reportWarning(String.format("Logging took %.2f ms, over its %.2f ms budget", elapsedSeconds * 1000.0, LoggingConstants.loopBudgetSeconds * 1000.0), false);
+            overBudgetReported = true;
+        }
+
+        if (Telemetry.isEnabled(Telemetry.Level.DEBUG)) {
+            SmartDashboard.putNumber("Logger Loop Milliseconds", elapsedSeconds * 1000.0);
+        }
+    }
+
+    /* Runs on the size check notifier, the newest file in the log directory is the one being written */
+    private void checkLogSize() {
+        File[] logs = new File(DataLogManager.getLogDir()).listFiles((dir, name) -> name.endsWith(".wpilog"));
+        if (logs == null || logs.length == 0) {
+            return;
+        }
+
+        File current = Arrays.stream(logs).max(Comparator.comparingLong(File::lastModified)).get();
+        if (current.length() > LoggingConstants.maxLogFileBytes) {
+            DriverStation.reportWarning(String.format("%s is %d MB, restart the robot code to start a new log", current.getName(), current.length() / 1000000), false);
+            sizeCheckNotifier.stop(); // Reported once, the file only grows from here
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package frc.robot.utilities;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Turns desired chassis speeds into module states the modules can actually reach in one loop. Instead of
+ * jumping straight to the desired speeds, it moves the previous setpoint toward them by the largest fraction
+ * that keeps every module inside its drive acceleration and steering velocity limits, so all modules change
+ * together and the chassis keeps following a feasible path instead of the wheels fighting each other.
+ */
+public class SwerveSetpointGenerator {
+    private static final double nominalLoopSeconds = 0.02; // Used for the first setpoint and whenever the loop time is unknown
+    private static final double maxLoopSeconds = 0.1; // Longer gaps mean nobody was driving, so the setpoint is rebuilt from the measured states
+    private static final double stoppedSpeedMetersPerSecond = 0.01; // Below this a module is treated as stopped and holds its angle
+    private static final int bisectionIterations = 10; // Resolves the interpolation fraction to about 0.1%
+
+    private final SwerveDriveKinematics kinematics;
+    private final Translation2d[] moduleLocations;
+    private final double maxModuleSpeed;
+    private final double maxModuleAcceleration;
+    private final double maxModuleSteeringVelocity;
+
+    private ChassisSpeeds previousSpeeds = new ChassisSpeeds();
+    private SwerveModuleState[] previousStates;
+    private double previousTimestamp = Double.NaN;
+
+    /**
+    * @param kinematics The kinematics of the drivetrain.
+    * @param moduleLocations The module locations the kinematics were built from, in the same order.
+    * @param maxModuleSpeed The fastest a module is allowed to drive, in meters per second.
+    * @param maxModuleAcceleration The fastest a module's wheel speed may change, in meters per second squared.
+    * @param maxModuleSteeringVelocity The fastest a module may steer, in radians per second.
+    */
+    public SwerveSetpointGenerator(SwerveDriveKinematics kinematics, Translation2d[] moduleLocations, double maxModuleSpeed, double maxModuleAcceleration, double maxModuleSteeringVelocity) {
+        this.kinematics = kinematics;
+        this.moduleLocations = moduleLocations;
+        this.maxModuleSpeed = maxModuleSpeed;
+        this.maxModuleAcceleration = maxModuleAcceleration;
+        this.maxModuleSteeringVelocity = maxModuleSteeringVelocity;
+
+        previousStates = new SwerveModuleState[moduleLocations.length];
+        for (int i = 0; i < previousStates.length; i++) {
+            previousStates[i] = new SwerveModuleState();
+        }
+    }
+
+    /**
+    * Replaces the previous setpoint, used when something else commanded the modules (path following) or
+    * when the drivetrain was idle, so the next generated setpoint starts from what the modules are doing.
+    *
+    * @param states The module states that were last commanded or measured.
+    */
+    public void setPreviousSetpoint(SwerveModuleState[] states) {
+        for (int i = 0; i < previousStates.length; i++) {
+            previousStates[i] = new SwerveModuleState(states[i].speedMetersPerSecond, states[i].angle);
+        }
+
+        previousSpeeds = kinematics.toChassisSpeeds(previousStates);
+        previousTimestamp = Timer.getFPGATimestamp();
+    }
+
+    /**
+    * Generates the next reachable setpoint.
+    *
+    * @param desiredSpeeds The robot relative speeds the driver or controller asked for.
+    * @param measuredStates The module states measured this loop, used if the previous setpoint is too old.
+    * @return The module states to command this loop.
+    */
+    public SwerveModuleState[] generate(ChassisSpeeds desiredSpeeds, SwerveModuleState[] measuredStates) {
+        double timestamp = Timer.getFPGATimestamp();
+        double dt = timestamp - previousTimestamp;
+
+        if (Double.isNaN(dt) || dt > maxLoopSeconds) {
+            setPreviousSetpoint(measuredStates);
+            dt = nominalLoopSeconds;
+        } else if (dt <= 0.0) {
+            dt = nominalLoopSeconds;
+        }
+
+        previousTimestamp = timestamp;
+
+        SwerveModuleState[] desiredStates = kinematics.toSwerveModuleStates(desiredSpeeds);
+        SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, maxModuleSpeed);
+        ChassisSpeeds targetSpeeds = kinematics.toChassisSpeeds(desiredStates);
+
+        double maxDriveChange = maxModuleAcceleration * dt;
+        double maxSteeringChange = maxModuleSteeringVelocity * dt;
+
+        // Every module limits how far along the line from the previous speeds to the target speeds the chassis can move this loop
+        double fraction = 1.0;
+        for (int i = 0; i < moduleLocations.length; i++) {
+            fraction = Math.min(fraction, findMaxFraction(i, targetSpeeds, maxDriveChange, maxSteeringChange, fraction));
+        }
+
+        ChassisSpeeds speeds = interpolate(previousSpeeds, targetSpeeds, fraction);
+        SwerveModuleState[] states = kinematics.toSwerveModuleStates(speeds);
+
+        for (int i = 0; i < states.length; i++) {
+            if (Math.abs(states[i].speedMetersPerSecond) < stoppedSpeedMetersPerSecond) {
+                // Hold the previous angle instead of snapping the wheel to the meaningless angle of a zero vector
+                states[i] = new SwerveModuleState(0.0, previousStates[i].angle);
+            } else {
+                states[i] = flipToNearest(states[i], previousStates[i]);
+            }
+        }
+
+        previousSpeeds = speeds;
+        previousStates = states;
+
+        return states;
+    }
+
+    /* Bisects for the largest fraction (up to the given upper bound) a single module can follow this loop */
+    private double findMaxFraction(int module, ChassisSpeeds targetSpeeds, double maxDriveChange, double maxSteeringChange, double upperBound) {
+        if (isFeasible(module, interpolate(previousSpeeds, targetSpeeds, upperBound), maxDriveChange, maxSteeringChange)) {
+            return upperBound;
+        }
+
+        double low = 0.0;
+        double high = upperBound;
+        for (int i = 0; i < bisectionIterations; i++) {
+            double middle = (low + high) / 2.0;
+            if (isFeasible(module, interpolate(previousSpeeds, targetSpeeds, middle), maxDriveChange, maxSteeringChange)) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private boolean isFeasible(int module, ChassisSpeeds speeds, double maxDriveChange, double maxSteeringChange) {
+        Translation2d location = moduleLocations[module];
+        double vx = speeds.vxMetersPerSecond - speeds.omegaRadiansPerSecond * location.getY();
+        double vy = speeds.vyMetersPerSecond + speeds.omegaRadiansPerSecond * location.getX();
+        double speed = Math.hypot(vx, vy);
+
+        SwerveModuleState previous = previousStates[module];
+
+        if (speed < stoppedSpeedMetersPerSecond) {
+            return Math.abs(previous.speedMetersPerSecond) <= maxDriveChange;
+        }
+
+        SwerveModuleState candidate = flipToNearest(new SwerveModuleState(speed, new Rotation2d(vx, vy)), previous);
+
+        if (Math.abs(candidate.speedMetersPerSecond - previous.speedMetersPerSecond) > maxDriveChange) {
+            return false;
+        }
+
+        // A stopped wheel can steer without scrubbing, so only a moving one has to respect the steering rate
+        if (Math.abs(previous.speedMetersPerSecond) < stoppedSpeedMetersPerSecond) {
+            return true;
+        }
+
+        return Math.abs(candidate.angle.minus(previous.angle).getRadians()) <= maxSteeringChange;
+    }
+
+    /* Reverses the wheel if that is a smaller turn from where it was, the same way the modules optimize their states */
+    private static SwerveModuleState flipToNearest(SwerveModuleState state, SwerveModuleState previous) {
+        double delta = MathUtil.angleModulus(state.angle.minus(previous.angle).getRadians());
+        if (Math.abs(delta) > Math.PI / 2.0) {
+            return new SwerveModuleState(-state.speedMetersPerSecond, state.angle.rotateBy(Rotation2d.fromDegrees(180)));
+        }
+
+        return state;
+    }
+
+    private static ChassisSpeeds interpolate(ChassisSpeeds start, ChassisSpeeds end, double fraction) {
+        return new ChassisSpeeds(
+            MathUtil.interpolate(start.vxMetersPerSecond, end.vxMetersPerSecond, fraction),
+            MathUtil.interpolate(start.vyMetersPerSecond, end.vyMetersPerSecond, fraction),
+            MathUtil.interpolate(start.omegaRadiansPerSecond, end.omegaRadiansPerSecond, fraction)
+        );
+    }
+}
@@ -0,0 +1,49 @@
+package frc.robot.utilities;
+
+import java.util.function.BooleanSupplier;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+
+import frc.robot.utilities.constants.Constants;
+
+/** Builds the full set of SysId characterization tests for a mechanism */
+public class SysIdUtil {
+
+    /**
+    * Runs the quasistatic and dynamic tests in both directions with a pause between each so the mechanism
+    * comes to rest. Every Spark Max is switched to full telemetry for the duration so the logged positions and
+    * velocities come in every 20 ms. Mechanisms log the voltage they command rather than the Spark Max's applied
+    * output, which only arrives in Status 0 every 500 ms.
+    *
+    * @param routine The routine of the mechanism to characterize.
+    * @return A command running all four tests, logged through the DataLogManager in the SysId format.
+    */
+    public static Command fullRoutine(SysIdRoutine routine) {
+        return fullRoutine(routine, () -> false, () -> false);
+    }
+
+    /**
+    * Runs the full set of tests on a mechanism with limited travel, ending each test early once it reaches the
+    * limit in the direction it's moving.
+    *
+    * @param routine The routine of the mechanism to characterize.
+    * @param forwardLimit Whether the mechanism is at the end of its travel in the positive voltage direction.
+    * @param reverseLimit Whether the mechanism is at the end of its travel in the negative voltage direction.
+    * @return A command running all four tests, logged through the DataLogManager in the SysId format.
+    */
+    public static Command fullRoutine(SysIdRoutine routine, BooleanSupplier forwardLimit, BooleanSupplier reverseLimit) {
+        return Commands.sequence(
+            routine.quasistatic(SysIdRoutine.Direction.kForward).until(forwardLimit),
+            Commands.waitSeconds(Constants.SysIdConstants.restSeconds),
+            routine.quasistatic(SysIdRoutine.Direction.kReverse).until(reverseLimit),
+            Commands.waitSeconds(Constants.SysIdConstants.restSeconds),
+            routine.dynamic(SysIdRoutine.Direction.kForward).until(forwardLimit),
+            Commands.waitSeconds(Constants.SysIdConstants.restSeconds),
+            routine.dynamic(SysIdRoutine.Direction.kReverse).until(reverseLimit)
+        )
+        .beforeStarting(() -> CANBusBudget.getInstance().setForceFullTelemetry(true))
+        .finallyDo(() -> CANBusBudget.getInstance().setForceFullTelemetry(false));
+    }
+}
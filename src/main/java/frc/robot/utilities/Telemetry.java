@@ -0,0 +1,60 @@
+package frc.robot.utilities;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * How much the robot publishes to the dashboard. Every publish site checks {@link #isEnabled(Level)} before
+ * building and sending its data, which is a single field read, so anything above the current level costs nothing
+ * on the roboRIO or the network. The level follows the "Telemetry Level" chooser, and on automatic it drops to
+ * competition whenever the FMS is attached.
+ */
+public class Telemetry {
+    public enum Level {
+        COMPETITION, // Only what the drive team looks at during a match
+        DEBUG, // Diagnostics for the pit and practice field
+        TUNING // Everything, including the data for tuning controllers
+    }
+
+    private static final Level defaultLevel = Level.DEBUG; // Used off the field when the chooser is on automatic
+
+    private static SendableChooser<Level> chooser;
+    private static volatile Level level = defaultLevel;
+
+    private Telemetry() {}
+
+    /** Puts the level chooser on the dashboard, call once at startup */
+    public static void initialize() {
+        chooser = new SendableChooser<>();
+        chooser.setDefaultOption("Automatic", null); // Competition with the FMS attached, debug otherwise
+        for (Level option : Level.values()) {
+            chooser.addOption(option.name(), option);
+        }
+
+        SmartDashboard.putData("Telemetry Level", chooser);
+        SmartDashboard.putString("Current Telemetry Level", level.name());
+    }
+
+    /** Picks the level for this loop, call once at the start of every loop before anything publishes */
+    public static void update() {
+        Level selected = (chooser == null) ? null : chooser.getSelected();
+        if (selected == null) {
+            selected = DriverStation.isFMSAttached() ? Level.COMPETITION : defaultLevel;
+        }
+
+        if (selected != level) {
+            level = selected;
+            SmartDashboard.putString("Current Telemetry Level", level.name());
+        }
+    }
+
+    /** Returns whether data that needs the given level should be published this loop */
+    public static boolean isEnabled(Level required) {
+        return level.ordinal() >= required.ordinal();
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+}
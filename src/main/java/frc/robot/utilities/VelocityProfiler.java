@@ -0,0 +1,221 @@
+package frc.robot.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pathplanner.lib.path.ConstraintsZone;
+import com.pathplanner.lib.path.EventMarker;
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+import com.pathplanner.lib.path.RotationTarget;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Time-optimal velocity profiles along bezier paths from the {@link DrivetrainLimits}. The path is sampled
+ * finely, every sample gets the speed limit the wheels and the curvature allow, then a forward pass speeds up
+ * as hard as the drivetrain can and a backward pass makes sure it can still slow down for every corner and the
+ * end of the path. The result gives the path's real drive time and the constraint zones to build it with, so
+ * PathPlanner's trajectory runs at the edge of what the robot can do instead of one fixed constraint everywhere.
+ */
+public class VelocityProfiler {
+    private static final int samplesPerSegment = 50; // Samples along each bezier segment, about every few centimeters on a typical leg
+    private static final int zonesPerSegment = 4; // Constraint zones given to PathPlanner for each bezier segment
+
+    /** A velocity profile along one path */
+    public static class Profile {
+        private final double[] waypointPosition; // Position in PathPlanner's waypoint units, segment index plus the bezier parameter
+        private final double[] distance; // Meters from the start of the path
+        private final double[] curvature; // 1 / meters
+        private final double[] speedLimit; // Meters per second the wheels and the curvature allow at each sample
+        private final double[] velocity; // Meters per second of the profile at each sample
+        private final double totalSeconds;
+
+        private Profile(double[] waypointPosition, double[] distance, double[] curvature, double[] speedLimit, double[] velocity) {
+            this.waypointPosition = waypointPosition;
+            this.distance = distance;
+            this.curvature = curvature;
+            this.speedLimit = speedLimit;
+            this.velocity = velocity;
+
+            double seconds = 0.0;
+            for (int i = 1; i < velocity.length; i++) {
+                double averageSpeed = (velocity[i - 1] + velocity[i]) / 2.0;
+                if (averageSpeed > 1e-9) {
+                    seconds += (distance[i] - distance[i - 1]) / averageSpeed;
+                }
+            }
+
+            this.totalSeconds = seconds;
+        }
+
+        /** Returns how long driving the path takes, in seconds */
+        public double getTotalSeconds() {
+            return totalSeconds;
+        }
+
+        /** Returns the length of the path, in meters */
+        public double getLength() {
+            return distance[distance.length - 1];
+        }
+
+        /** Returns the fastest speed the profile reaches, in meters per second */
+        public double getPeakVelocity() {
+            double peak = 0.0;
+            for (double speed : velocity) peak = Math.max(peak, speed);
+            return peak;
+        }
+    }
+
+    private final DrivetrainLimits limits;
+
+    public VelocityProfiler(DrivetrainLimits limits) {
+        this.limits = limits;
+    }
+
+    /**
+    * Profiles a path made of cubic bezier segments, the same control point layout PathPlanner uses.
+    *
+    * @param bezierPoints The anchor and control points, 3 per segment plus the final anchor.
+    * @param startVelocity How fast the robot is going at the start of the path, in meters per second.
+    * @param endVelocity How fast the robot should be going at the end of the path, in meters per second.
+    */
+    public Profile profile(List<Translation2d> bezierPoints, double startVelocity, double endVelocity) {
+        int segments = (bezierPoints.size() - 1) / 3;
+        int samples = segments * samplesPerSegment + 1;
+
+        double[] waypointPosition = new double[samples];
+        double[] distance = new double[samples];
+        double[] curvature = new double[samples];
+        double[] speedLimit = new double[samples];
+        double[] velocity = new double[samples];
+
+        Translation2d previous = bezierPoints.get(0);
+        for (int i = 0; i < samples; i++) {
+            int segment = Math.min(i / samplesPerSegment, segments - 1);
+            double t = (double) (i - segment * samplesPerSegment) / samplesPerSegment;
+            int first = segment * 3;
+
+            Translation2d p0 = bezierPoints.get(first);
+            Translation2d p1 = bezierPoints.get(first + 1);
+            Translation2d p2 = bezierPoints.get(first + 2);
+            Translation2d p3 = bezierPoints.get(first + 3);
+
+            Translation2d point = position(p0, p1, p2, p3, t);
+            waypointPosition[i] = segment + t;
+            distance[i] = (i == 0) ? 0.0 : distance[i - 1] + previous.getDistance(point);
+            curvature[i] = curvature(p0, p1, p2, p3, t);
+            speedLimit[i] = limits.getMaxCorneringSpeed(curvature[i]);
+            previous = point;
+        }
+
+        // Forward pass: speed up as hard as possible from the start without going over any sample's limit
+        velocity[0] = Math.min(startVelocity, speedLimit[0]);
+        for (int i = 1; i < samples; i++) {
+            double step = distance[i] - distance[i - 1];
+            double acceleration = limits.getMaxAcceleration(velocity[i - 1], curvature[i - 1]);
+            velocity[i] = Math.min(speedLimit[i], Math.sqrt(velocity[i - 1] * velocity[i - 1] + 2.0 * acceleration * step));
+        }
+
+        // Backward pass: make sure every sample can still brake in time for the ones after it
+        velocity[samples - 1] = Math.min(velocity[samples - 1], endVelocity);
+        for (int i = samples - 2; i >= 0; i--) {
+            double step = distance[i + 1] - distance[i];
+            double deceleration = limits.getMaxDeceleration(velocity[i + 1], curvature[i + 1]);
+            velocity[i] = Math.min(velocity[i], Math.sqrt(velocity[i + 1] * velocity[i + 1] + 2.0 * deceleration * step));
+        }
+
+        return new Profile(waypointPosition, distance, curvature, speedLimit, velocity);
+    }
+
+    /** Returns the constraints for a whole path, what the drivetrain can do at its best */
+    public PathConstraints getGlobalConstraints() {
+        return new PathConstraints(limits.getMaxSpeed(), limits.getMaxAcceleration(), limits.getMaxAngularSpeed(), limits.getMaxAngularAcceleration());
+    }
+
+    /**
+    * Splits a profile into constraint zones for PathPlanner. Each zone gets the lowest speed limit anywhere in it,
+    * and the lowest limit the profile actually uses in it at the profiled speed: the acceleration limit where it
+    * speeds up, the braking limit where it slows down, and nothing where it holds its speed. PathPlanner uses a
+    * zone's one acceleration for both, so the acceleration limit near top speed (close to zero) must not end up
+    * limiting the braking, which would make the trajectory far slower than the profile.
+    */
+    public List<ConstraintsZone> getConstraintZones(Profile profile) {
+        List<ConstraintsZone> zones = new ArrayList<>();
+        PathConstraints global = getGlobalConstraints();
+
+        int segments = (int) Math.round(profile.waypointPosition[profile.waypointPosition.length - 1]);
+        int zoneCount = segments * zonesPerSegment;
+        int samplesPerZone = samplesPerSegment / zonesPerSegment;
+
+        for (int zone = 0; zone < zoneCount; zone++) {
+            int first = zone * samplesPerZone;
+            int last = Math.min(first + samplesPerZone, profile.velocity.length - 1);
+
+            double maxVelocity = global.getMaxVelocityMps();
+            double maxAcceleration = global.getMaxAccelerationMpsSq();
+
+            for (int i = first; i <= last; i++) {
+                maxVelocity = Math.min(maxVelocity, profile.speedLimit[i]);
+                if (i == last) {
+                    continue; // The next zone covers the change after its first sample
+                }
+
+                double change = profile.velocity[i + 1] - profile.velocity[i];
+                if (change > 1e-6) {
+                    maxAcceleration = Math.min(maxAcceleration, limits.getMaxAcceleration(profile.velocity[i], profile.curvature[i]));
+                } else if (change < -1e-6) {
+                    maxAcceleration = Math.min(maxAcceleration, limits.getMaxDeceleration(profile.velocity[i + 1], profile.curvature[i + 1]));
+                }
+            }
+
+            // PathPlanner can't plan with zero acceleration, near the top speed there is always a little left in practice
+            maxAcceleration = Math.max(maxAcceleration, 0.1 * global.getMaxAccelerationMpsSq());
+
+            zones.add(new ConstraintsZone(profile.waypointPosition[first], profile.waypointPosition[last], new PathConstraints(
+                maxVelocity, maxAcceleration, global.getMaxAngularVelocityRps(), global.getMaxAngularAccelerationRpsSq())));
+        }
+
+        return zones;
+    }
+
+    /**
+    * Builds a PathPlanner path with constraints from the velocity profile instead of fixed ones.
+    *
+    * @param bezierPoints The anchor and control points, for example from {@link PathPlannerPath#bezierFromPoses}.
+    * @param goalEndState The velocity and rotation to end the path with.
+    */
+    public PathPlannerPath createPath(List<Translation2d> bezierPoints, GoalEndState goalEndState) {
+        Profile profile = profile(bezierPoints, 0.0, goalEndState.getVelocity());
+
+        return new PathPlannerPath(
+            bezierPoints,
+            new ArrayList<RotationTarget>(),
+            getConstraintZones(profile),
+            new ArrayList<EventMarker>(),
+            getGlobalConstraints(),
+            goalEndState,
+            false);
+    }
+
+    private static Translation2d position(Translation2d p0, Translation2d p1, Translation2d p2, Translation2d p3, double t) {
+        double u = 1.0 - t;
+        return p0.times(u * u * u).plus(p1.times(3 * u * u * t)).plus(p2.times(3 * u * t * t)).plus(p3.times(t * t * t));
+    }
+
+    /* Curvature of a cubic bezier from its first and second derivatives */
+    private static double curvature(Translation2d p0, Translation2d p1, Translation2d p2, Translation2d p3, double t) {
+        double u = 1.0 - t;
+        Translation2d first = p1.minus(p0).times(3 * u * u).plus(p2.minus(p1).times(6 * u * t)).plus(p3.minus(p2).times(3 * t * t));
+        Translation2d second = p2.minus(p1.times(2)).plus(p0).times(6 * u).plus(p3.minus(p2.times(2)).plus(p1).times(6 * t));
+
+        double speed = first.getNorm();
+        if (speed < 1e-9) {
+            return 0.0;
+        }
+
+        double cross = first.getX() * second.getY() - first.getY() * second.getX();
+        return cross / (speed * speed * speed);
+    }
+}
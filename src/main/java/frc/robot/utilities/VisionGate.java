@@ -0,0 +1,172 @@
+package frc.robot.utilities;
+
+import java.util.Optional;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.Vector;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.math.util.Units;
+
+import frc.robot.utilities.constants.Constants.PoseConstants;
+import frc.robot.utilities.constants.Constants.VisionConstants;
+
+/**
+ * Decides how much to trust each vision pose and whether to use it at all. The standard deviations grow with the
+ * distance to the tags, shrink with more tags, and grow with pose ambiguity and how fast the robot is spinning,
+ * so close multi-tag views pull the estimate in quickly and far or blurry ones barely move it. Measurements are
+ * then gated on their Mahalanobis distance from the current estimate, so a wrong pose (a misread tag, a
+ * reflection) is thrown away instead of yanking the estimate. If the rejected measurements keep agreeing with each
+ * other for long enough, the estimate is the one that's wrong (the robot was pushed or reset to the wrong spot)
+ * and vision is let back in.
+ */
+public class VisionGate {
+    private final double odometryStdDevXY = Math.hypot(PoseConstants.kPositionStdDevX, PoseConstants.kPositionStdDevY) / Math.sqrt(2);
+    private final double odometryStdDevTheta = Units.degreesToRadians(PoseConstants.kPositionStdDevTheta);
+
+    private Translation2d lastEstimateTranslation = null;
+    private double distanceSinceAccepted = 0.0;
+
+    private int consecutiveRejections = 0;
+    private Translation2d lastRejectedTranslation = null;
+
+    private double lastMahalanobisDistance = 0.0;
+    private Vector<N3> lastStdDevs = VecBuilder.fill(0.0, 0.0, 0.0);
+
+    /**
+    * Tracks how far the estimate has moved since vision was last accepted, odometry drifts with distance driven.
+    * Call once per loop after the odometry update.
+    */
+    public void updateOdometry(Pose2d estimate) {
+        if (lastEstimateTranslation != null) {
+            distanceSinceAccepted += estimate.getTranslation().getDistance(lastEstimateTranslation);
+        }
+
+        lastEstimateTranslation = estimate.getTranslation();
+    }
+
+    /**
+    * Works out the standard deviations of a vision measurement.
+    *
+    * @param tagCount How many tags the pose was solved from.
+    * @param averageTagDistance The average distance from the camera to those tags, in meters.
+    * @param ambiguity The pose ambiguity of a single tag solve, 0 for multi-tag.
+    * @param yawRate How fast the robot is rotating, in radians per second.
+    * @return The x, y and heading std devs in meters and radians, or empty if the measurement shouldn't be used at all.
+    */
+    public Optional<Vector<N3>> computeStdDevs(int tagCount, double averageTagDistance, double ambiguity, double yawRate) {
+        if (tagCount <= 0 || Math.abs(yawRate) > PoseConstants.kVisionMaxYawRate) {
+            return Optional.empty();
+        }
+
+        boolean singleTag = tagCount == 1;
+        if (singleTag && (averageTagDistance > PoseConstants.kVisionMaxSingleTagDistance || ambiguity > VisionConstants.POSE_AMBIGUITY_CUTOFF)) {
+            return Optional.empty();
+        }
+
+        // Pixel error turns into position error that grows with the square of the distance, and averages down over more tags
+        double scale = Math.max(1.0, averageTagDistance * averageTagDistance) / tagCount;
+        scale *= 1.0 + PoseConstants.kVisionAmbiguityMultiplier * ambiguity;
+        scale *= 1.0 + PoseConstants.kVisionYawRateMultiplier * Math.abs(yawRate);
+
+        if (singleTag) {
+            scale *= PoseConstants.kVisionSingleTagMultiplier;
+        }
+
+        double xy = PoseConstants.kVisionBaseStdDevXY * scale;
+        // A single tag's heading flips easily, the gyro is much better, so it isn't trusted at all
+        double theta = singleTag ? Units.degreesToRadians(PoseConstants.kVisionStdDevTheta) : Units.degreesToRadians(PoseConstants.kVisionBaseStdDevTheta) * scale;
+
+        return Optional.of(VecBuilder.fill(xy, xy, theta));
+    }
+
+    /**
+    * Decides whether to use a vision measurement.
+    *
+    * @param visionPose The pose vision measured.
+    * @param estimate The pose estimate at the time the measurement was taken.
+    * @param tagCount How many tags the pose was solved from.
+    * @param averageTagDistance The average distance from the camera to those tags, in meters.
+    * @param ambiguity The pose ambiguity of a single tag solve, 0 for multi-tag.
+    * @param yawRate How fast the robot is rotating, in radians per second.
+    * @return The std devs to add the measurement with, or empty if it was rejected.
+    */
+    public Optional<Vector<N3>> evaluate(Pose2d visionPose, Pose2d estimate, int tagCount, double averageTagDistance, double ambiguity, double yawRate) {
+        Optional<Vector<N3>> stdDevs = computeStdDevs(tagCount, averageTagDistance, ambiguity, yawRate);
+        if (stdDevs.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Vector<N3> measurementStdDevs = stdDevs.get();
+        lastStdDevs = measurementStdDevs;
+
+        // The estimate's own uncertainty, its odometry trust plus the drift since vision last corrected it
+        double drift = PoseConstants.kOdometryDriftPerMeter * distanceSinceAccepted;
+        double estimateVarianceXY = odometryStdDevXY * odometryStdDevXY + drift * drift;
+        double estimateVarianceTheta = odometryStdDevTheta * odometryStdDevTheta;
+
+        double dx = visionPose.getX() - estimate.getX();
+        double dy = visionPose.getY() - estimate.getY();
+        double dTheta = MathUtil.angleModulus(visionPose.getRotation().minus(estimate.getRotation()).getRadians());
+
+        double distanceSquared = dx * dx / (estimateVarianceXY + square(measurementStdDevs.get(0, 0)))
+            + dy * dy / (estimateVarianceXY + square(measurementStdDevs.get(1, 0)));
+        double threshold = PoseConstants.kVisionGateChiSquaredXY;
+
+        // Only check the heading when the measurement's heading is being used
+        if (tagCount > 1) {
+            distanceSquared += dTheta * dTheta / (estimateVarianceTheta + square(measurementStdDevs.get(2, 0)));
+            threshold = PoseConstants.kVisionGateChiSquaredXYTheta;
+        }
+
+        lastMahalanobisDistance = Math.sqrt(distanceSquared);
+
+        if (distanceSquared <= threshold || shouldEscape(visionPose)) {
+            accept();
+            return Optional.of(measurementStdDevs);
+        }
+
+        return Optional.empty();
+    }
+
+    /* Counts rejections that agree with each other, enough of them in a row means vision is right and the estimate is lost */
+    private boolean shouldEscape(Pose2d visionPose) {
+        Translation2d translation = visionPose.getTranslation();
+
+        if (lastRejectedTranslation != null && translation.getDistance(lastRejectedTranslation) <= PoseConstants.kVisionRejectionAgreementMeters) {
+            consecutiveRejections++;
+        } else {
+            consecutiveRejections = 1;
+        }
+
+        lastRejectedTranslation = translation;
+        return consecutiveRejections >= PoseConstants.kVisionMaxConsecutiveRejections;
+    }
+
+    private void accept() {
+        distanceSinceAccepted = 0.0;
+        consecutiveRejections = 0;
+        lastRejectedTranslation = null;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    /** Returns the Mahalanobis distance of the last measurement that reached the gate */
+    public double getLastMahalanobisDistance() {
+        return lastMahalanobisDistance;
+    }
+
+    /** Returns the std devs of the last measurement that reached the gate, in meters and radians */
+    public Vector<N3> getLastStdDevs() {
+        return lastStdDevs;
+    }
+
+    /** Returns how many measurements in a row have been rejected while agreeing with each other */
+    public int getConsecutiveRejections() {
+        return consecutiveRejections;
+    }
+}
@@ -1,5 +1,6 @@
 package frc.robot.utilities.constants;
 
+import com.pathplanner.lib.path.PathConstraints;
 import com.pathplanner.lib.util.PIDConstants;
 
 import com.revrobotics.CANSparkBase.IdleMode;
@@ -9,9 +10,12 @@ import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.DifferentialDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.PowerDistribution.ModuleType;
 
 // All of the constants that are accessed by other files, to prevent repetition and allows easy changing
 
@@ -36,9 +40,11 @@ public class Constants {
         public static final double driveKFF = 0.0; // Force: Additional gain for creating offsts
 
         /* Drive Motor Characterization Values */
-        public static final double driveKS = 0.667;
-        public static final double driveKV = 2.44;
-        public static final double driveKA = 0.27;
+        public static final double driveKS = 0.667; // Volts to overcome static friction
+        public static final double driveKV = 2.44; // Volts per meter per second
+        public static final double driveKA = 0.27; // Volts per meter per second squared
+
+        public static final double driveTrackingErrorWindowSeconds = 1.0; // Window the drive velocity tracking RMS error is averaged over
 
         /* Front Left Module - Module 0 */
         public static final class FrontLeftModule {
@@ -90,12 +96,13 @@ public class Constants {
         public static final double AngleGearRatio = (12.8 / 1.0); // Steering ratio on the MK3 modules is 12.8:1
 
         /* Swerve Kinematics generated by defining the locations of the modules from the center of the robot (if wrong movement by translation will still work, but the rotation will be messed up) */
-        public static final SwerveDriveKinematics SwerveKinematics = new SwerveDriveKinematics(
+        public static final Translation2d[] ModuleLocations = {
             new Translation2d(WheelBase / 2, TrackWidth / 2), // Divide TrackWidth and WheelBase to define where the module is (+, +)
             new Translation2d(WheelBase / 2, -TrackWidth / 2), // Divide TrackWidth and WheelBase to define where the module is (+, -)
             new Translation2d(-WheelBase / 2, TrackWidth / 2), // Divide TrackWidth and WheelBase to define where the module is (-, +)
             new Translation2d(-WheelBase / 2, -TrackWidth / 2) // Divide TrackWidth and WheelBase to define where the module is (-, -)
-        );
+        };
+        public static final SwerveDriveKinematics SwerveKinematics = new SwerveDriveKinematics(ModuleLocations);
 
         /* Drive Motor Conversion Factors */
         public static final double DriveConversionPositionFactor = (WheelDiameter * Math.PI) / DriveGearRatio;
@@ -108,6 +115,17 @@ public class Constants {
         public static final double PhysicalAngularMaxVelocity = 3 * Math.PI; // Maxiumum speed in radians per seconr that the swerve module is able to rotate (6.28 radians per full rotation)
         public static final double PhysicalMaxAngularAcceleration = 3.2;
 
+        /* Setpoint Generator Limits */
+        public static final double MaxModuleAcceleration = 8.0; // Fastest a single wheel's speed may change in meters per second squared, keep below the point the wheels start slipping
+        public static final double MaxModuleSteeringVelocity = 6 * Math.PI; // Fastest a module may steer in radians per second while its wheel is moving, slower than the steering motor's free speed so the angle PID can keep up
+
+        /* Path Velocity Profiling Limits, see DrivetrainLimits */
+        public static final DCMotor DriveMotor = DCMotor.getNEO(1); // One drive motor per module
+        public static final double RobotMassKilograms = Units.lbsToKilograms(125); // Robot with battery and bumpers
+        public static final double WheelCoefficientOfFriction = 1.0; // Tread on carpet, sets how hard the robot can accelerate or corner before the wheels slip
+        public static final double ProfileNominalVoltage = 11.0; // Battery voltage assumed under load when working out the top speed and acceleration
+        public static final double ProfileSafetyFactor = 0.9; // Fraction of the computed limits paths are actually given, leaves the controllers room to correct
+
         /* Neutral Modes */
         public static final IdleMode angleNeutralMode = IdleMode.kBrake; // What the steering motor should do when not applied with any power (should always be brake while running to prevent overshooting target)
         public static final IdleMode driveNeutralMode = IdleMode.kBrake; // What the drive motor should do when not applied with any power (should always be brake while running to prevent overshooting target)
@@ -128,6 +146,27 @@ public class Constants {
         public static final double BackRightCANcoderOffsetRotations = 0;
     }
 
+    public static final class HeadingConstants {
+        /* PID Values for holding the robot's heading while the rotation stick is idle, output is in radians per second per radian of error */
+        public static final double headingKP = 4.0; // Propotional: Turn toward the held heading propotional to how far off it is
+        public static final double headingKI = 0.0; // Intergral: Not needed, nothing pushes the robot off its heading for long
+        public static final double headingKD = 0.0; // Derivative: Replaced by the NavX yaw rate damping below, which isn't delayed by the loop
+        public static final double yawRateDamping = 0.2; // How much of the measured yaw rate (radians per second) is taken back out of the correction
+
+        public static final double headingTolerance = Units.degreesToRadians(1.0); // Within this the heading is held only by the yaw rate damping, prevents jitter
+        public static final double captureYawRate = Units.degreesToRadians(20.0); // After the stick is released the heading is captured once the robot turns slower than this, so it doesn't snap back
+        public static final double maxCorrectionFraction = 0.5; // Heading corrections use at most this fraction of the maximum angular velocity
+
+        /* Speaker Auto-Aim, profiled so the robot turns smoothly onto the speaker instead of snapping */
+        public static final double aimKP = 5.0; // Propotional: Radians per second of correction per radian the robot is off the profile
+        public static final double aimKI = 0.0; // Intergral: Not needed, the bearing rate feedforward covers turning while driving past the speaker
+        public static final double aimKD = 0.0; // Derivative: The profile already slows the robot down as it reaches the speaker
+        public static final double aimMaxAngularVelocity = 2 * Math.PI; // Fastest the robot turns while aiming in radians per second
+        public static final double aimMaxAngularAcceleration = 4 * Math.PI; // Fastest the robot speeds up its turn while aiming in radians per second squared
+        public static final double aimTolerance = Units.degreesToRadians(2.0); // The robot is aimed once it's within this of the speaker
+        public static final Rotation2d shooterHeadingOffset = Rotation2d.fromDegrees(0); // Rotation from the front of the robot to the direction notes leave the shooter
+    }
+
     public static final class AutonomousConstants {
         public static final double PhysicalMaxSpeedMetersPerSecond = 4.4;
         public static final double MaxAccelerationMetersPerSecondSquared = 3;
@@ -140,11 +179,19 @@ public class Constants {
 
         public static final PIDConstants TranslationPID = new PIDConstants(5.0, 0.0, 0.0);
         public static final PIDConstants RotationalPID = new PIDConstants(9, 5.0, 0.0);
+
+        /* On-the-fly pathfinding around the obstacles in deploy/pathplanner/navgrid.json, the swerve constraints come from DrivetrainLimits */
+        public static final double PathfindingRotationDelayDistance = 0.0; // How far the robot travels before it starts rotating to the goal heading
+
+        /* On-the-fly paths are reused instead of rebuilt while the robot and the target stay within these of where the last path was built for */
+        public static final double OnTheFlyReuseDistance = 0.15; // Meters
+        public static final double OnTheFlyReuseAngle = Units.degreesToRadians(10.0);
+        public static final double OnTheFlyArrivedDistance = 0.03; // Meters, closer than this to the target and no path is built
+        public static final double OnTheFlyArrivedAngle = Units.degreesToRadians(2.0); // Without a path the robot turns in place until it's within this of the target heading
     }
 
      public static class VisionConstants {
         public static final boolean DRIVER_CAMERA_ACTIVE = false;
-        public static final boolean VISION_OVERRIDE_ENABLED = false;
         public static final boolean IS_LIMELIGHT_MODE = false;
         public static final boolean IS_PHOTON_VISION_MODE = true;// TODO: Change to false
         public static final boolean IS_NEURAL_NET = true;
@@ -222,6 +269,22 @@ public class Constants {
         public static final double kVisionStdDevX = 2.5;
         public static final double kVisionStdDevY = 2.5;
         public static final double kVisionStdDevTheta = 500;
+
+        // Per-measurement vision std devs, see VisionGate. Scaled from these by distance squared, tag count, ambiguity and yaw rate.
+        public static final double kVisionBaseStdDevXY = 0.05; // Meters, one tag one meter away with no ambiguity while still
+        public static final double kVisionBaseStdDevTheta = 2; // Degrees, only multi-tag estimates are trusted for heading
+        public static final double kVisionSingleTagMultiplier = 3.0; // A single tag's pose is much noisier than a multi-tag solve
+        public static final double kVisionAmbiguityMultiplier = 10.0; // Std devs grow by (1 + this * ambiguity)
+        public static final double kVisionYawRateMultiplier = 1.5; // Std devs grow by (1 + this * radians per second), motion blur and latency error
+        public static final double kVisionMaxSingleTagDistance = 4.0; // Meters, single tags further than this are ignored
+        public static final double kVisionMaxYawRate = 2 * Math.PI; // Radians per second, spinning faster than this ignores vision
+
+        // Mahalanobis gate against the current estimate
+        public static final double kOdometryDriftPerMeter = 0.03; // Meters of odometry error expected per meter driven since the last accepted measurement
+        public static final double kVisionGateChiSquaredXY = 9.21; // 99% of good measurements pass with 2 degrees of freedom
+        public static final double kVisionGateChiSquaredXYTheta = 11.34; // 99% with 3 degrees of freedom
+        public static final int kVisionMaxConsecutiveRejections = 15; // Rejected measurements that agree with each other this many times in a row mean the estimate is the one that's wrong
+        public static final double kVisionRejectionAgreementMeters = 0.3; // How close consecutive rejected measurements need to be to count as agreeing
       }
 
     public static final class IntakeConstants {
@@ -332,6 +395,8 @@ public class Constants {
     }
 
     public static final class TankConstants {
+        public static final boolean IS_TANK_DRIVE = false; // True on the tank practice base, RobotContainer then builds the TankSubsystem instead of swerve and everything else follows it
+
         /* Hardware ID from CAN */
         public static final int FrontLeftID = 1; // Motor ID of the motor thats closest to the front in the left gearbox
         public static final int FrontRightID = 2; // Motor ID of the motor thats closest to the front in the right gearbox
@@ -345,6 +410,158 @@ public class Constants {
         /* Speed Profiling */
         public static double ForwardReductionSpeed = 0; // Tuning for the forward speed of our drivetrain, if needed
         public static double RotationReductionSpeed = 0; // Tuning for the rotational speed of our drivetrain, if needed
+
+        /* Drivetrain geometry */
+        public static final double TrackWidth = Units.inchesToMeters(22); // Distance between the centers of the left and right wheels (must be converted to meters)
+        public static final double WheelDiameter = Units.inchesToMeters(6.0); // Diameter of the drive wheels (must be converted to meters)
+        public static final double WheelCircumference = WheelDiameter * Math.PI;
+        public static final double GearRatio = (10.71 / 1.0); // Motor rotations per wheel rotation, the Talons report positions in wheel rotations with this
+        public static final DifferentialDriveKinematics TankKinematics = new DifferentialDriveKinematics(TrackWidth);
+        public static final double MaxSpeedMetersPerSecond = 3.5; // Fastest a side is commanded to go while following a path
+        public static final double MaxAccelerationMetersPerSecondSquared = 3.0; // How hard a side speeds up while pathfinding, starting value until the base is characterized
+
+        /* Pathfinding constraints from the sides' limits, turning in place runs the sides opposite each other around half the track width */
+        public static final PathConstraints PathfindingConstraints = new PathConstraints(
+            MaxSpeedMetersPerSecond,
+            MaxAccelerationMetersPerSecondSquared,
+            MaxSpeedMetersPerSecond / (TrackWidth / 2),
+            MaxAccelerationMetersPerSecondSquared / (TrackWidth / 2));
+
+        /* Odometry */
+        public static final double odometryUpdateFrequencyHz = 250.0; // Position and velocity are sent this often, so the latency compensated position is never more than a few milliseconds old
+
+        /* Closed loop wheel velocity for path following, in volts per wheel rotation per second, starting values until the base is characterized */
+        public static final double velocityKP = 0.5;
+        public static final double velocityKS = 0.15;
+        public static final double velocityKV = 1.2;
+    }
+
+    public static final class CANBusConstants {
+        public static final double busBitrate = 1000000.0; // The roboRIO CAN bus runs at 1 Mbit/s
+        public static final double bitsPerFrame = 130.0; // Worst case size of an extended CAN frame with 8 data bytes, including bit stuffing
+        public static final double targetUtilization = 0.6; // Keep the expected status frame load well below saturation to leave room for control frames and other devices
+        public static final double idleHoldoffSeconds = 0.5; // How long a mechanism has to be idle before it drops to its idle frame profile, prevents flapping between profiles
+
+        /* CAN Health Monitoring */
+        public static final double healthSamplePeriodSeconds = 0.01; // How often the health monitor samples the bus and every device, faster than any status frame we rely on
+        public static final double staleFrameCount = 5; // A device is stale after missing this many of its expected status frames in a row
+        public static final double minimumStaleSeconds = 0.1; // Never call a device stale sooner than this, covers jitter on fast frames
+        public static final int navXUpdateRateHz = 200; // The fastest the NavX sends updates over SPI, GyroService buffers every one of them
+        public static final double navXUpdatePeriodSeconds = 1.0 / navXUpdateRateHz;
+        public static final double CANcoderUpdatePeriodSeconds = 1.0 / 100.0; // Absolute position update rate, twice the loop rate so a batched refresh is never more than 10ms old
+        public static final double CANcoderInitialUpdateTimeoutSeconds = 0.25; // How long to wait for the first absolute position before seeding the steering encoders
+    }
+
+    public static final class DriverCameraConstants {
+        public static final int usbPort = 0;
+
+        /* Streams the camera's own MJPEG frames at its native mode, the roboRIO only recompresses when the compression isn't -1 */
+        public static final DriverCameraProfile disabledProfile = new DriverCameraProfile(true, 160, 120, 5, -1); // Enough to line up before the match
+        public static final DriverCameraProfile autonomousProfile = new DriverCameraProfile(false, 160, 120, 5, -1); // Nobody drives in auto, the loop gets the CPU
+        public static final DriverCameraProfile teleopProfile = new DriverCameraProfile(true, 320, 240, 20, -1);
+        public static final DriverCameraProfile testProfile = new DriverCameraProfile(true, 320, 240, 15, -1);
+
+        /* Cost estimates */
+        public static final double telemetryPeriodSeconds = 1.0; // How often cscore measures the actual frame rate and data rate
+        public static final double passthroughCpuPercentPerMegapixelPerSecond = 0.5; // roboRIO CPU to forward frames the camera already compressed
+        public static final double recompressCpuPercentPerMegapixelPerSecond = 6.0; // roboRIO CPU to decode and re-encode frames, measured with the stream open
+    }
+
+    public static final class LoggingConstants {
+        public static final int maxLogFiles = 30; // Oldest .wpilog files past this many are deleted at startup, about two events of matches
+        public static final double loopBudgetSeconds = 0.0003; // Logging a loop should take less than this, a warning is logged when it doesn't
+        public static final long maxLogFileBytes = 500_000_000L; // A warning is reported once the current log grows past this, DataLog can't rotate files while running
+        public static final double sizeCheckPeriodSeconds = 10.0; // How often the current log's size is checked, it's a file system call
+    }
+
+    public static final class BlackBoxConstants {
+        public static final String fileName = "blackbox.bin"; // In the operating directory, /home/lvuser on the roboRIO
+        public static final String dumpDirectory = "blackbox"; // Decoded CSVs of previous runs, in the operating directory
+        public static final double recordSeconds = 15.0; // How much the ring buffer holds, sizes the file at startup
+        public static final double dumpSeconds = 10.0; // How much of the previous run gets decoded after a reboot
+        public static final int maxDumps = 20; // Oldest decoded CSVs past this many are deleted
+    }
+
+    public static final class PowerConstants {
+        /* Battery model, V = open circuit voltage - resistance * current, fit online */
+        public static final double initialOpenCircuitVoltage = 12.8; // A freshly charged battery at rest
+        public static final double initialBatteryResistance = 0.020; // Ohms, battery, main breaker and wiring of a typical robot
+        public static final double minBatteryResistance = 0.008; // Ohms, the fit is clamped to a physically sensible range
+        public static final double maxBatteryResistance = 0.060;
+        public static final double resistanceForgettingFactor = 0.995; // Per sample, about 4 seconds of memory at 50Hz
+        public static final double resistanceExcitationAmps = 5.0; // The fit only forgets old samples when the current changes by this much, so it doesn't drift while the load is steady
+
+        /* Budget */
+        public static final double targetMinimumVoltage = 7.5; // Keep the battery above this, the roboRIO 2 browns out at 6.3V and the radio needs margin
+        public static final double baseLoadAmps = 5.0; // roboRIO, radio, cameras and everything that isn't a registered motor
+        public static final double maxBudgetAmps = 300.0; // Upper bound on the total even with a strong battery
+        public static final double minDutyWeight = 0.25; // A motor's battery current is its duty cycle times its phase current, idle motors are assumed to be at least this loaded
+
+        /* Applying limits, setting a limit is a CAN parameter write so they're only sent when they change */
+        public static final int limitStepAmps = 5; // Limits are rounded down to multiples of this
+        public static final double raisePeriodSeconds = 0.25; // Limits are lowered right away but raised at most this often
+        public static final int sparkMaxCANTimeoutMs = 20; // REVLib's default parameter write timeout, put back after each limit is sent without waiting
+
+        /* Budgets per mechanism, priority 0 gets current first */
+        public static final CurrentBudget steerBudget = new CurrentBudget(0, 15, ModuleConstants.angleContinuousCurrentLimit, 20);
+        public static final CurrentBudget driveBudget = new CurrentBudget(1, 15, ModuleConstants.driveContinuousCurrentLimit, 40);
+        public static final CurrentBudget climberBudget = new CurrentBudget(2, 30, ClimberConstants.rightClimbContinuousCurrentLimit, 60);
+        public static final CurrentBudget shooterBudget = new CurrentBudget(3, 30, 60, 80); // 80A is the Spark Max default the shooter ran at before
+        public static final CurrentBudget intakeRollerBudget = new CurrentBudget(4, 20, 40, IntakeConstants.rollerContinuousCurrentLimit);
+        public static final CurrentBudget intakePivotBudget = new CurrentBudget(4, 20, 30, IntakeConstants.pivotContinuousCurrentLimit);
+    }
+
+    public static final class PowerDistributionConstants {
+        public static final int module = 1; // CAN ID of the REV PDH
+        public static final ModuleType moduleType = ModuleType.kRev;
+        public static final double samplePeriodSeconds = 0.01; // Faster than the PDH sends its channel currents, so no reading is missed
+        public static final double historySeconds = 2.0; // How much the sample ring buffer holds
+
+        /* Which device is on which channel, has to match the robot's wiring */
+        public static final PowerChannel[] channels = {
+            new PowerChannel(0, ModuleConstants.FrontLeftModule.driveMotorID, "Drive"),
+            new PowerChannel(1, ModuleConstants.FrontLeftModule.angleMotorID, "Steer"),
+            new PowerChannel(2, ModuleConstants.FrontRightModule.driveMotorID, "Drive"),
+            new PowerChannel(3, ModuleConstants.FrontRightModule.angleMotorID, "Steer"),
+            new PowerChannel(4, ModuleConstants.BackLeftModule.driveMotorID, "Drive"),
+            new PowerChannel(5, ModuleConstants.BackLeftModule.angleMotorID, "Steer"),
+            new PowerChannel(6, ModuleConstants.BackRightModule.driveMotorID, "Drive"),
+            new PowerChannel(7, ModuleConstants.BackRightModule.angleMotorID, "Steer"),
+            new PowerChannel(10, ShooterConstants.lowerShooterMotorID, "Shooter"),
+            new PowerChannel(11, ShooterConstants.upperShooterMotorID, "Shooter"),
+            new PowerChannel(12, IntakeConstants.pivotMotorID, "Intake"),
+            new PowerChannel(13, IntakeConstants.rollerMotorID, "Intake"),
+            new PowerChannel(14, ClimberConstants.LeftClimbMotorID, "Climber"),
+            new PowerChannel(15, ClimberConstants.RightClimbMotorID, "Climber")
+        };
+    }
+
+    public static final class ThermalConstants {
+        public static final DCMotor motor = DCMotor.getNEO(1); // Every managed Spark Max drives a NEO, its winding resistance sets the heating
+
+        /* Two mass model, starting estimates for a NEO to be tuned against logged temperatures */
+        public static final double ambientCelsius = 25.0;
+        public static final double windingToCaseResistance = 0.3; // Celsius per watt
+        public static final double caseToAmbientResistance = 0.6; // Celsius per watt
+        public static final double windingHeatCapacity = 60.0; // Joules per Celsius, copper in the stator
+        public static final double caseHeatCapacity = 200.0; // Joules per Celsius, housing and stator iron
+        public static final double measurementGain = 0.1; // Per loop, how much of the gap to the reported temperature the model closes
+
+        /* Derating */
+        public static final double windingLimitCelsius = 100.0; // Keep the windings under this, well short of where the insulation and magnets suffer
+        public static final double predictionHorizonSeconds = 10.0; // Limits are set so the windings stay under the limit for this long at full limit
+        public static final int minimumAmps = 10; // A hot motor is never limited below this, it still has to hold position
+    }
+
+    public static final class SysIdConstants {
+        public static final double restSeconds = 2.0; // Pause between tests so the mechanism comes to a stop before the next one starts
+
+        /* The intake pivot only has a short range of travel before hitting its hard stops, so it's characterized gently */
+        public static final double pivotRampVoltsPerSecond = 0.5;
+        public static final double pivotStepVolts = 2.0;
+        public static final double pivotTimeoutSeconds = 3.0;
+        public static final double pivotMinDegrees = 10.0; // A reverse test ends once the pivot encoder reads below this, short of the stored hard stop
+        public static final double pivotMaxDegrees = 80.0; // A forward test ends once the pivot encoder reads above this, short of the deployed hard stop
     }
 
     public static final class ControllerRawButtons {
@@ -480,6 +697,7 @@ public class Constants {
         public static final int operatorControllerPort = 1; // Operator Controllers helps with all of the other mechanisms and subsystems attached on the robot.
 
         public static final double kDeadband = 0.1; // Default deband to help with stick drift on the controllers, recorded values we get is usually (+- 0.05)
+        public static final boolean teleopOpenLoop = false; // Drive the wheels with percent output instead of closed-loop velocity while driving in teleop
         public static final boolean disableHAL = false; // Disables the HAL for the robot, used for testing purposes
 
         public static final boolean IS_ALLIANCE_RED = true;
@@ -0,0 +1,22 @@
+package frc.robot.utilities.constants;
+
+public class CurrentBudget {
+    public final int priority;
+    public final int minAmps;
+    public final int nominalAmps;
+    public final int maxAmps;
+
+    /**
+    * @param priority Lower numbers get current first when the battery can't supply everything
+    * @param minAmps Smart current limit the motor never goes below, no matter how low the battery is
+    * @param nominalAmps Smart current limit the motor gets while idle, when there's enough current to spare
+    * @param maxAmps Smart current limit the motor can get while in use, when there's enough current to spare
+    */
+
+    public CurrentBudget(int priority, int minAmps, int nominalAmps, int maxAmps) {
+        this.priority = priority;
+        this.minAmps = minAmps;
+        this.nominalAmps = nominalAmps;
+        this.maxAmps = maxAmps;
+    }
+}
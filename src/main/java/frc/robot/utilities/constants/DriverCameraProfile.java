@@ -0,0 +1,25 @@
+package frc.robot.utilities.constants;
+
+public class DriverCameraProfile {
+    public final boolean enabled;
+    public final int width;
+    public final int height;
+    public final int fps;
+    public final int compression;
+
+    /**
+    * @param enabled Whether to stream at all in this mode
+    * @param width Width of the stream in pixels
+    * @param height Height of the stream in pixels
+    * @param fps Frames per second of the stream
+    * @param compression JPEG quality 0-100, or -1 to pass the camera's own MJPEG frames through without recompressing them
+    */
+
+    public DriverCameraProfile(boolean enabled, int width, int height, int fps, int compression) {
+        this.enabled = enabled;
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.compression = compression;
+    }
+}
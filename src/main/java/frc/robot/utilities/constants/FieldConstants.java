@@ -13,11 +13,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.wpi.first.apriltag.AprilTagFieldLayout;
 import edu.wpi.first.math.geometry.*;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Filesystem;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import lombok.Getter;
 
 /**
  * Contains various field dimensions and useful reference points. Dimensions are in meters, and sets
@@ -47,6 +47,22 @@ public class FieldConstants {
         public static final Pose2d RED_AMP = new Pose2d(14.68, 7.52, new Rotation2d(Math.PI / 2));
         public static final Pose2d RED_SOURCE = new Pose2d(1.14, 1.00, Rotation2d.fromDegrees(-120));
         public static final Pose2d RED_STAGE = new Pose2d(13, 2, Rotation2d.fromDegrees(120));
+
+        /* Where the robot shoots into the speaker from, facing the speaker */
+        public static final double SPEAKER_SCORING_STANDOFF = 1.9; // Meters out from the alliance wall, the same on both sides of the field
+        public static final Pose2d BLUE_SPEAKER_SCORING = new Pose2d(SPEAKER_SCORING_STANDOFF, 5.7, Rotation2d.fromDegrees(180));
+        public static final Pose2d RED_SPEAKER_SCORING = new Pose2d(fieldLength - SPEAKER_SCORING_STANDOFF, 5.7, Rotation2d.fromDegrees(0));
+
+        /** Returns the pose for our alliance, blue if the alliance isn't known yet */
+        public static Pose2d forAlliance(Pose2d bluePose, Pose2d redPose) {
+            return isRedAlliance() ? redPose : bluePose;
+        }
+
+        /** Returns whether the driver station says we're on red, the driver then faces the field's -X direction */
+        public static boolean isRedAlliance() {
+            var alliance = DriverStation.getAlliance();
+            return alliance.isPresent() && alliance.get() == DriverStation.Alliance.Red;
+        }
     }
 
     /** Staging locations for each note */
@@ -110,7 +126,6 @@ public class FieldConstants {
     public static final double aprilTagWidth = Units.inchesToMeters(6.50);
     public static final AprilTagLayoutType defaultAprilTagType = AprilTagLayoutType.OFFICIAL;
 
-    @Getter
     public enum AprilTagLayoutType {
         OFFICIAL("2024-official"),
         SPEAKERS_ONLY("2024-speakers"),
@@ -118,6 +133,20 @@ public class FieldConstants {
         WPI("2024-wpi");
 
         private AprilTagLayoutType(String name) {
+            this.name = name;
+        }
+
+        private final String name;
+        private AprilTagFieldLayout layout;
+        private String layoutString;
+        private boolean loaded = false;
+
+        /* Loaded on first use instead of when FieldConstants is first touched, so the field dimensions can be used off the robot (offline tools) without the deploy directory */
+        private synchronized void load() {
+            if (loaded) {
+                return;
+            }
+
             if (Constants.DriverConstants.disableHAL) {
                 layout = null;
             } else {
@@ -137,9 +166,18 @@ public class FieldConstants {
                     throw new RuntimeException("Failed to serialize AprilTag layout JSON " + toString() + "for Northstar");
                 }
             }
+
+            loaded = true;
         }
 
-        private final AprilTagFieldLayout layout;
-        private final String layoutString;
+        public AprilTagFieldLayout getLayout() {
+            load();
+            return layout;
+        }
+
+        public String getLayoutString() {
+            load();
+            return layoutString;
+        }
     }
 }
\ No newline at end of file
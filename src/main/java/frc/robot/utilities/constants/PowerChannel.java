@@ -0,0 +1,19 @@
+package frc.robot.utilities.constants;
+
+public class PowerChannel {
+    public final int channel;
+    public final int canID;
+    public final String mechanism;
+
+    /**
+    * @param channel Power distribution channel the device is wired to
+    * @param canID CAN ID of the device on that channel
+    * @param mechanism Mechanism the channel's energy and current are counted towards
+    */
+
+    public PowerChannel(int channel, int canID, String mechanism) {
+        this.channel = channel;
+        this.canID = canID;
+        this.mechanism = mechanism;
+    }
+}